@@ -0,0 +1,33 @@
+package cz.oneblock.core.benchmark;
+
+import cz.oneblock.core.BootLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.InputStream;
+
+public class BenchmarkBootLoader implements BootLoader {
+
+    private final Logger logger = LoggerFactory.getLogger("Benchmark");
+    private final File dataFolder;
+
+    public BenchmarkBootLoader(File dataFolder) {
+        this.dataFolder = dataFolder;
+    }
+
+    @Override
+    public Logger getSystemLogger() {
+        return logger;
+    }
+
+    @Override
+    public File getDataFolder() {
+        return dataFolder;
+    }
+
+    @Override
+    public InputStream getResourceAsStream(String resource) {
+        return getClass().getClassLoader().getResourceAsStream(resource);
+    }
+}
@@ -0,0 +1,53 @@
+package cz.oneblock.core.benchmark;
+
+import cz.oneblock.core.util.ComponentUtil;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.TextComponent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formats a multi-line message, where every line contains a few of the placeholders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComponentUtilBenchmark {
+
+    private static final int LINES = 20;
+
+    @Param({"10", "100", "1000"})
+    private int replacements;
+
+    private List<TextComponent> components;
+    private Map<String, String> replacementMap;
+
+    @Setup
+    public void setup() {
+        replacementMap = new LinkedHashMap<>();
+
+        for (int i = 0; i < replacements; i++) {
+            replacementMap.put("%placeholder-" + i + "%", "value " + i);
+        }
+
+        components = new ArrayList<>(LINES);
+
+        for (int line = 0; line < LINES; line++) {
+            components.add(Component.text("Line " + line + ": %placeholder-" + (line % replacements) + "% and %placeholder-" + (line * 7 % replacements) + "%"));
+        }
+    }
+
+    @Benchmark
+    public List<TextComponent> formatComponents() {
+        return ComponentUtil.formatComponents(components, replacementMap);
+    }
+
+}
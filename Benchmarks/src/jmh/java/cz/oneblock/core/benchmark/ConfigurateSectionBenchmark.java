@@ -0,0 +1,81 @@
+package cz.oneblock.core.benchmark;
+
+import cz.oneblock.core.configuration.ConfigPath;
+import cz.oneblock.core.configuration.ConfigurateSection;
+import org.openjdk.jmh.annotations.*;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+import org.spongepowered.configurate.serialize.SerializationException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads values nested eight levels deep, through string paths looked up in the path cache, and through compiled {@link ConfigPath}s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigurateSectionBenchmark {
+
+    private static final String PREFIX = "level_1.level-2.level-3.level-4.level-5.level-6.level-7.level-8";
+
+    private static final ConfigPath STRING = ConfigPath.of(PREFIX + ".string");
+    private static final ConfigPath INTEGER = ConfigPath.of(PREFIX + ".integer");
+
+    private ConfigurateSection section;
+
+    @Setup
+    public void setup() throws SerializationException {
+        var root = CommentedConfigurationNode.root();
+        section = new ConfigurateSection(root);
+
+        section.set(PREFIX + ".string", "value");
+        section.set(PREFIX + ".integer", 42);
+        section.set(PREFIX + ".boolean", true);
+        root.node((Object[]) (PREFIX.replace('_', '-') + ".list").split("\\.")).setList(String.class, List.of("a", "b", "c"));
+    }
+
+    @Benchmark
+    public String getString() {
+        return section.getString(PREFIX + ".string");
+    }
+
+    @Benchmark
+    public String getStringCompiled() {
+        return section.getString(STRING);
+    }
+
+    @Benchmark
+    public int getIntWithDefault() {
+        return section.getInt(PREFIX + ".integer", 0);
+    }
+
+    @Benchmark
+    public int getIntWithDefaultCompiled() {
+        return section.getInt(INTEGER, 0);
+    }
+
+    @Benchmark
+    public boolean getBooleanWithDefault() {
+        return section.getBoolean(PREFIX + ".boolean", false);
+    }
+
+    @Benchmark
+    public List<String> getStringList() {
+        return section.getStringList(PREFIX + ".list");
+    }
+
+    @Benchmark
+    public int getMissingWithDefault() {
+        return section.getInt(PREFIX + ".missing", 0);
+    }
+
+    @Benchmark
+    public ConfigurateSection getSection() {
+        return section.getSection(PREFIX);
+    }
+
+}
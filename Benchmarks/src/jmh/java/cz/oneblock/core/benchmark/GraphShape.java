@@ -0,0 +1,44 @@
+package cz.oneblock.core.benchmark;
+
+import cz.oneblock.core.AbstractDaemon;
+import cz.oneblock.core.benchmark.synthetic.deep.DeepDaemons;
+import cz.oneblock.core.benchmark.synthetic.layered.LayeredDaemons;
+import cz.oneblock.core.benchmark.synthetic.star.StarDaemons;
+import cz.oneblock.core.benchmark.synthetic.wide.WideDaemons;
+
+import java.util.List;
+
+/**
+ * The shapes of the synthetic dependency graphs, generated by the {@code generateSyntheticDaemons} task.
+ */
+public enum GraphShape {
+    /**
+     * Every daemon depends on its predecessor, and on one farther away.
+     */
+    DEEP(DeepDaemons.DAEMONS),
+    /**
+     * No dependencies at all.
+     */
+    WIDE(WideDaemons.DAEMONS),
+    /**
+     * Layers of 32 daemons, every daemon depends on two daemons of the previous layer.
+     */
+    LAYERED(LayeredDaemons.DAEMONS),
+    /**
+     * Every daemon depends on the first one.
+     */
+    STAR(StarDaemons.DAEMONS);
+
+    private final List<Class<? extends AbstractDaemon<?>>> daemons;
+
+    GraphShape(List<Class<? extends AbstractDaemon<?>>> daemons) {
+        this.daemons = daemons;
+    }
+
+    /**
+     * @return The first daemons of the graph, which never depend on the daemons left out.
+     */
+    public List<Class<? extends AbstractDaemon<?>>> getDaemons(int count) {
+        return daemons.subList(0, count);
+    }
+}
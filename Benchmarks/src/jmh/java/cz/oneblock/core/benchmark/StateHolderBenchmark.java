@@ -0,0 +1,72 @@
+package cz.oneblock.core.benchmark;
+
+import cz.oneblock.core.state.State;
+import cz.oneblock.core.state.StateHolder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State checks guard hot paths of the daemons, transitions only happen during the lifecycle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StateHolderBenchmark {
+
+    private static final Set<State> RUNNING = EnumSet.of(State.POST_STARTING, State.STARTED);
+
+    // Shared by all the threads, as the state of a daemon is.
+    private final StateHolder shared = new StateHolder(State.STARTED);
+
+    @State(Scope.Thread)
+    public static class Local {
+        private final StateHolder holder = new StateHolder(State.LOADED);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean is() {
+        return shared.is(State.STARTED);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean isAnyOf() {
+        return shared.is(RUNNING);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void requireState() {
+        shared.requireStatesOrThrow(State.STARTED);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void requireStatesVarargs() {
+        shared.requireStatesOrThrow(State.POST_STARTING, State.STARTED, State.STOPPING);
+    }
+
+    /**
+     * One full start and stop of a daemon, five transitions.
+     */
+    @Benchmark
+    public StateHolder transitions(Local local) {
+        var holder = local.holder;
+
+        holder.setStateOrThrow(State.STARTING, State.LOADED);
+        holder.setStateOrThrow(State.POST_STARTING, State.STARTING);
+        holder.setStateOrThrow(State.STARTED, State.POST_STARTING);
+        holder.setStateOrThrow(State.STOPPING, State.STARTED, State.POST_STARTING);
+        holder.setStateOrThrow(State.LOADED, State.STOPPING);
+
+        return holder;
+    }
+
+}
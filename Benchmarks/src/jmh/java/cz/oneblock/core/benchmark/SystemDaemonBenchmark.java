@@ -0,0 +1,72 @@
+package cz.oneblock.core.benchmark;
+
+import cz.oneblock.core.SystemDaemon;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boots and shuts down synthetic daemons, which do nothing but obtain their dependencies, so only the cost of {@link SystemDaemon} itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SystemDaemonBenchmark {
+
+    @Param({"DEEP", "WIDE", "LAYERED", "STAR"})
+    private GraphShape shape;
+
+    @Param({"10", "100", "1000"})
+    private int daemons;
+
+    private BenchmarkBootLoader bootLoader;
+
+    @Setup
+    public void setup() {
+        bootLoader = new BenchmarkBootLoader(new File("build/benchmark-data"));
+    }
+
+    private SystemDaemon createSystem() {
+        var system = new SystemDaemon(bootLoader, daemon -> true);
+
+        shape.getDaemons(daemons).forEach(system::registerDaemon);
+
+        return system;
+    }
+
+    @Benchmark
+    public SystemDaemon load() {
+        var system = createSystem();
+
+        system.load();
+
+        return system;
+    }
+
+    @Benchmark
+    public SystemDaemon boot() {
+        var system = createSystem();
+
+        system.load();
+        system.start();
+
+        return system;
+    }
+
+    @Benchmark
+    public SystemDaemon bootAndShutdown() {
+        var system = createSystem();
+
+        system.load();
+        system.start();
+        system.stop();
+        system.unLoad();
+
+        return system;
+    }
+
+}
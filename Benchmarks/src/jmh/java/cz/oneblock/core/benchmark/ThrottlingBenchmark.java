@@ -0,0 +1,81 @@
+package cz.oneblock.core.benchmark;
+
+import cz.oneblock.core.SystemDaemon;
+import cz.oneblock.core.cooldown.CoolDownDaemon;
+import cz.oneblock.core.cooldown.RateLimiter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Several threads throttling a shared pool of keys, the way players hit the same cool-downs.
+ * With a short window, both throttled and allowed calls are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ThrottlingBenchmark {
+
+    private static final long WINDOW_MILLIS = 5;
+
+    @Param({"64", "65536"})
+    private int keys;
+
+    private UUID[] keyPool;
+    private RateLimiter<Object> rateLimiter;
+    private CoolDownDaemon coolDownDaemon;
+
+    @Setup
+    public void setup() {
+        keyPool = new UUID[keys];
+
+        for (int i = 0; i < keys; i++) {
+            keyPool[i] = UUID.randomUUID();
+        }
+
+        rateLimiter = new RateLimiter<>(WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+
+        var system = new SystemDaemon(new BenchmarkBootLoader(new File("build/benchmark-data")), daemon -> true);
+        system.registerDaemon(CoolDownDaemon.class);
+        system.load();
+        system.start();
+
+        coolDownDaemon = system.getDaemon(CoolDownDaemon.class);
+        // Creates the limiter up front, so its creation is not measured.
+        coolDownDaemon.throttle("benchmark", keyPool[0], WINDOW_MILLIS);
+    }
+
+    private UUID nextKey() {
+        return keyPool[ThreadLocalRandom.current().nextInt(keys)];
+    }
+
+    @Benchmark
+    public LocalDateTime rateLimiterTryAndLimit() {
+        return rateLimiter.tryAndLimit(nextKey());
+    }
+
+    @Benchmark
+    public long rateLimiterTryAcquire() {
+        return rateLimiter.tryAcquire(nextKey());
+    }
+
+    @Benchmark
+    public Duration coolDownThrottle() {
+        return coolDownDaemon.throttle("benchmark", nextKey(), WINDOW_MILLIS);
+    }
+
+    @Benchmark
+    public long coolDownThrottleNanos() {
+        return coolDownDaemon.throttleNanos("benchmark", nextKey(), WINDOW_MILLIS);
+    }
+
+}
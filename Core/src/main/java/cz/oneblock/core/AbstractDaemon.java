@@ -2,9 +2,13 @@ package cz.oneblock.core;
 
 import cz.oneblock.core.state.State;
 import cz.oneblock.core.state.StateHolder;
+import cz.oneblock.core.state.StateListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 
 public abstract class AbstractDaemon<B extends BootLoader> {
@@ -37,18 +41,56 @@ public abstract class AbstractDaemon<B extends BootLoader> {
         return state;
     }
 
+    /**
+     * Allows other daemons to follow the lifecycle of this one, see {@link StateHolder#addListener(StateListener, Executor)}.
+     */
+    public void addStateListener(StateListener listener, Executor executor) {
+        state.addListener(listener, executor);
+    }
+
+    public void removeStateListener(StateListener listener) {
+        state.removeListener(listener);
+    }
+
     protected void postLoad() {
     }
 
+    /**
+     * The asynchronous variant of {@link #postLoad()}. The daemons depending on this one are not post-loaded until the returned stage completes,
+     * while independent daemons carry on in the meantime. Runs {@link #postLoad()} by default.
+     */
+    protected CompletionStage<Void> postLoadAsync() {
+        postLoad();
+        return CompletableFuture.completedFuture(null);
+    }
+
     protected void start() {
     }
 
+    /**
+     * The asynchronous variant of {@link #start()}. The daemons depending on this one are not started until the returned stage completes,
+     * while independent daemons carry on in the meantime. Runs {@link #start()} by default.
+     */
+    protected CompletionStage<Void> startAsync() {
+        start();
+        return CompletableFuture.completedFuture(null);
+    }
+
     protected void postStart() {
     }
 
     protected void stop() {
     }
 
+    /**
+     * The asynchronous variant of {@link #stop()}. The daemons this one depends on are not stopped until the returned stage completes,
+     * while independent daemons carry on in the meantime. Runs {@link #stop()} by default.
+     */
+    protected CompletionStage<Void> stopAsync() {
+        stop();
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * <b>This method may be run before {@link #postLoad()}</b>
      */
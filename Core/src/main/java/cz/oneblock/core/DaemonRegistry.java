@@ -0,0 +1,55 @@
+package cz.oneblock.core;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of the loaded daemons and their dependencies, published by the {@link SystemDaemon} once it has been loaded,
+ * and replaced whenever a daemon is loaded lazily or restarted.
+ * <p>
+ * Lookups go through a {@link ClassValue}, so after the first lookup of a class they take no locks, do not hash, and never touch the dependency graph.
+ */
+final class DaemonRegistry {
+
+    private final Map<Class<AbstractDaemon<?>>, AbstractDaemon<?>> daemons;
+    private final Map<Class<?>, Set<Class<?>>> dependencies;
+    private final ClassValue<Entry> index = new ClassValue<>() {
+        @Override
+        protected Entry computeValue(Class<?> type) {
+            return new Entry(daemons.get(type), dependencies.getOrDefault(type, Set.of()));
+        }
+    };
+
+    /**
+     * @param daemons      The daemons, which are ready to be used.
+     * @param dependencies The daemons mapped to their direct dependencies.
+     */
+    DaemonRegistry(Map<Class<AbstractDaemon<?>>, AbstractDaemon<?>> daemons, Map<Class<?>, Set<Class<?>>> dependencies) {
+        this.daemons = Collections.unmodifiableMap(new LinkedHashMap<>(daemons));
+        this.dependencies = Map.copyOf(dependencies);
+    }
+
+    @Nullable
+    AbstractDaemon<?> get(Class<?> clazz) {
+        return index.get(clazz).daemon();
+    }
+
+    /**
+     * @return Whether the edge has been recorded in the dependency graph, when the snapshot was taken.
+     */
+    boolean dependsOn(Class<?> dependent, Class<?> dependency) {
+        return index.get(dependent).dependencies().contains(dependency);
+    }
+
+    Map<Class<AbstractDaemon<?>>, AbstractDaemon<?>> asMap() {
+        return daemons;
+    }
+
+    private record Entry(@Nullable AbstractDaemon<?> daemon, Set<Class<?>> dependencies) {
+    }
+
+}
@@ -1,35 +1,87 @@
 package cz.oneblock.core;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.graph.GraphBuilder;
 import com.google.common.graph.Graphs;
 import com.google.common.graph.MutableGraph;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import cz.oneblock.core.index.DaemonFactory;
+import cz.oneblock.core.index.DaemonIndex;
+import cz.oneblock.core.lifecycle.BootPlan;
+import cz.oneblock.core.lifecycle.BootReport;
+import cz.oneblock.core.lifecycle.ExitStrategy;
+import cz.oneblock.core.lifecycle.LifecyclePhase;
+import cz.oneblock.core.lifecycle.LifecycleProfiler;
+import cz.oneblock.core.lifecycle.PhaseTiming;
+import cz.oneblock.core.lifecycle.StageScheduler;
 import cz.oneblock.core.state.State;
 import cz.oneblock.core.state.StateHolder;
+import cz.oneblock.core.util.DaemonLoadingException;
+import cz.oneblock.core.util.DependencyUtil;
+import cz.oneblock.core.util.IncrementalTopologicalOrder;
+import cz.oneblock.core.util.LazyDaemon;
 import cz.oneblock.core.util.NeedsConfigurationException;
 import cz.oneblock.core.util.ReflectionUtil;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 @SuppressWarnings({"UnstableApiUsage", "unchecked"})
 public class SystemDaemon {
 
+    private static final Set<State> MATERIALIZABLE_STATES = EnumSet.of(State.POST_LOADING, State.LOADED, State.STARTING, State.POST_STARTING, State.STARTED);
+
     private final BootLoader bootLoader;
     private final StateHolder state;
     private final Set<Class<? extends AbstractDaemon<?>>> registeredDaemons;
     private final Map<Class<AbstractDaemon<?>>, AbstractDaemon<?>> loadedDaemons;
+    private final Map<Class<? extends AbstractDaemon<?>>, FutureTask<AbstractDaemon<?>>> loadingTasks;
     private final MutableGraph<Class<? extends AbstractDaemon<?>>> daemonDependencyGraph;
-    private final List<AbstractDaemon<?>> startedDaemons;
+    private final IncrementalTopologicalOrder<Class<? extends AbstractDaemon<?>>> daemonOrder;
+    private final Set<AbstractDaemon<?>> startedDaemons;
     private final Predicate<Class<? extends AbstractDaemon<?>>> daemonFilter;
     private final Multimap<Class<? extends AbstractDaemon<?>>, Consumer<AbstractDaemon<?>>> whenLoaded;
     private final Set<AbstractDaemon<?>> needsConfiguration;
     private final AbstractDaemon<?> dummyDaemon;
+    private final Map<LifecyclePhase, Duration> phaseDeadlines;
+    private final Map<LifecyclePhase, Duration> daemonDeadlines;
+    private final Map<Class<?>, DaemonFactory> daemonFactories;
+    private final Map<Class<?>, Collection<Class<? extends AbstractDaemon<?>>>> daemonConflicts;
+    private final Set<Class<?>> lazyDaemons;
+    private final ReentrantLock lazyLock;
+    private final LifecycleProfiler profiler;
+    private Executor loadingExecutor;
+    private Executor lifecycleExecutor;
+    private boolean bootPlanCaching;
+    private Duration panicDeadline;
+    private ExitStrategy exitStrategy;
+    private long bootStartNanos;
+    private volatile BootReport bootReport;
+    // Published once loaded, null before that and after unloading.
+    private volatile DaemonRegistry registry;
     private Logger logger;
 
     public SystemDaemon(BootLoader bootLoader, Predicate<Class<? extends AbstractDaemon<?>>> daemonFilter) {
@@ -38,14 +90,27 @@ public class SystemDaemon {
         this.dummyDaemon = new AbstractDaemon<>(this) {
         };
 
-        this.registeredDaemons = new HashSet<>();
-        this.loadedDaemons = new LinkedHashMap<>();
-        this.startedDaemons = new ArrayList<>();
+        this.registeredDaemons = ConcurrentHashMap.newKeySet();
+        this.loadedDaemons = Collections.synchronizedMap(new LinkedHashMap<>());
+        this.loadingTasks = new ConcurrentHashMap<>();
+        this.startedDaemons = ConcurrentHashMap.newKeySet();
         this.whenLoaded = HashMultimap.create();
         this.daemonDependencyGraph = GraphBuilder.directed()
                 .allowsSelfLoops(false)
                 .build();
-        this.needsConfiguration = new HashSet<>();
+        this.daemonOrder = new IncrementalTopologicalOrder<>(daemonDependencyGraph);
+        this.needsConfiguration = ConcurrentHashMap.newKeySet();
+        this.phaseDeadlines = new EnumMap<>(LifecyclePhase.class);
+        this.daemonDeadlines = new EnumMap<>(LifecyclePhase.class);
+        this.daemonFactories = new HashMap<>();
+        this.daemonConflicts = new HashMap<>();
+        this.lazyDaemons = ConcurrentHashMap.newKeySet();
+        this.lazyLock = new ReentrantLock();
+        this.profiler = new LifecycleProfiler();
+        this.loadingExecutor = MoreExecutors.directExecutor();
+        this.lifecycleExecutor = MoreExecutors.directExecutor();
+        this.panicDeadline = Duration.ofSeconds(30);
+        this.exitStrategy = ExitStrategy.SYSTEM_EXIT;
 
         this.state = new StateHolder(State.INITIALIZED);
     }
@@ -54,31 +119,210 @@ public class SystemDaemon {
         needsConfiguration.add(daemon);
     }
 
+    /**
+     * @return An unmodifiable snapshot of the loaded daemons. Once the system has been loaded, this is the frozen registry, and does not copy anything.
+     */
     public Map<Class<AbstractDaemon<?>>, AbstractDaemon<?>> getLoadedDaemons() {
-        return loadedDaemons;
+        var frozen = registry;
+
+        if (frozen != null) return frozen.asMap();
+
+        synchronized (loadedDaemons) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(loadedDaemons));
+        }
+    }
+
+    /**
+     * @return An unmodifiable snapshot of the registered daemon classes, including the ones which have not been loaded yet.
+     */
+    public Set<Class<? extends AbstractDaemon<?>>> getRegisteredDaemons() {
+        return Set.copyOf(registeredDaemons);
     }
 
     public BootLoader getBootLoader() {
         return bootLoader;
     }
 
+    /**
+     * Sets the executor used to construct daemons during {@link #load()}. Daemons are constructed layer by layer, daemons within one layer concurrently.
+     * By default, everything is constructed on the thread calling {@link #load()}.
+     * <p>
+     * Any executor may be used, for example a {@link java.util.concurrent.ForkJoinPool} or a virtual-thread-per-task executor.
+     * A thread which needs a daemon that has not been constructed yet constructs it by itself, so even a single-threaded executor cannot deadlock.
+     *
+     * @param loadingExecutor The executor to construct the daemons on.
+     */
+    public void setLoadingExecutor(Executor loadingExecutor) {
+        state.requireStates(() -> this.loadingExecutor = loadingExecutor, State.INITIALIZED);
+    }
+
+    /**
+     * Enables saving the resolved dependency graph into the data folder, so the next boot can schedule the loading up front, including in parallel.
+     * If the daemons change, or a cached plan turns out to be wrong, the dependencies are discovered as usual, and the plan is rewritten.
+     *
+     * @param bootPlanCaching Whether to cache the boot plan, disabled by default.
+     */
+    public void setBootPlanCaching(boolean bootPlanCaching) {
+        state.requireStates(() -> this.bootPlanCaching = bootPlanCaching, State.INITIALIZED);
+    }
+
+    /**
+     * Enables measuring the wall time and allocations of every lifecycle phase of every daemon, recording them as JFR events,
+     * and logging a {@link BootReport} once started. Enabled by default, the overhead is a few timer reads per phase.
+     *
+     * @param lifecycleProfiling Whether to measure the lifecycle phases.
+     */
+    public void setLifecycleProfiling(boolean lifecycleProfiling) {
+        state.requireStates(() -> profiler.setEnabled(lifecycleProfiling), State.INITIALIZED);
+    }
+
+    /**
+     * @return The report of the last boot, or null if the system has not been started yet, or lifecycle profiling is disabled.
+     */
+    @Nullable
+    public BootReport getBootReport() {
+        return bootReport;
+    }
+
+    /**
+     * @return The timings of every lifecycle phase measured so far, including stopping and unloading, by daemon and phase.
+     */
+    public Map<Class<?>, Map<LifecyclePhase, PhaseTiming>> getLifecycleTimings() {
+        return profiler.getTimings();
+    }
+
+    /**
+     * Sets the executor used to start, post-start, stop and unload daemons. Each of these phases runs in dependency waves,
+     * daemons within one wave concurrently. By default, everything runs on the calling thread.
+     *
+     * @param lifecycleExecutor The executor to run the lifecycle methods on.
+     */
+    public void setLifecycleExecutor(Executor lifecycleExecutor) {
+        state.requireStates(() -> this.lifecycleExecutor = lifecycleExecutor, State.INITIALIZED);
+    }
+
+    /**
+     * Sets the deadline for a whole phase. Daemons, which do not finish in time, cause a panic, or are abandoned when tearing down.
+     * Deadlines are only enforced when the {@link #setLifecycleExecutor(Executor) lifecycle executor} runs the daemons on other threads.
+     *
+     * @param phase    One of {@link LifecyclePhase#START}, {@link LifecyclePhase#POST_START}, {@link LifecyclePhase#STOP} and {@link LifecyclePhase#UNLOAD}.
+     * @param deadline The deadline, or null to wait indefinitely.
+     */
+    public void setPhaseDeadline(LifecyclePhase phase, Duration deadline) {
+        state.requireStates(() -> {
+            if (deadline == null) {
+                phaseDeadlines.remove(phase);
+            } else {
+                phaseDeadlines.put(phase, deadline);
+            }
+        }, State.INITIALIZED);
+    }
+
+    /**
+     * Sets the deadline for a single daemon in a teardown phase. A daemon, which does not finish in time, is abandoned and reported,
+     * and its dependencies are torn down without waiting for it any longer.
+     *
+     * @param phase    One of {@link LifecyclePhase#STOP} and {@link LifecyclePhase#UNLOAD}.
+     * @param deadline The deadline, or null to wait indefinitely.
+     */
+    public void setDaemonDeadline(LifecyclePhase phase, Duration deadline) {
+        if (!phase.isTeardown()) throw new IllegalArgumentException("Only teardown phases have deadlines per daemon");
+
+        state.requireStates(() -> {
+            if (deadline == null) {
+                daemonDeadlines.remove(phase);
+            } else {
+                daemonDeadlines.put(phase, deadline);
+            }
+        }, State.INITIALIZED);
+    }
+
+    /**
+     * Sets the deadline for stopping and unloading all the daemons during a panic, 30 seconds by default.
+     * When panicking, the daemons are always torn down on dedicated threads, so the deadline is enforced regardless of the lifecycle executor.
+     */
+    public void setPanicDeadline(Duration panicDeadline) {
+        state.requireStates(() -> this.panicDeadline = Objects.requireNonNull(panicDeadline), State.INITIALIZED);
+    }
+
+    /**
+     * Sets how the process is ended after a panic, {@link ExitStrategy#SYSTEM_EXIT} by default.
+     */
+    public void setExitStrategy(ExitStrategy exitStrategy) {
+        state.requireStates(() -> this.exitStrategy = Objects.requireNonNull(exitStrategy), State.INITIALIZED);
+    }
+
     public void registerDaemon(Class<? extends AbstractDaemon<?>> daemonClass) {
         if (!daemonFilter.test(daemonClass)) {
             return;
         }
         state.requireStates(() -> {
             registeredDaemons.add(daemonClass);
-            daemonDependencyGraph.addNode(daemonClass);
+            synchronized (daemonDependencyGraph) {
+                daemonOrder.addNode(daemonClass);
+            }
+        }, State.INITIALIZED);
+    }
+
+    /**
+     * Makes the daemons from the index constructible without reflection. The daemons are not registered.
+     *
+     * @param index The index, usually generated by the annotation processor.
+     */
+    public void useIndex(DaemonIndex index) {
+        state.requireStates(() -> {
+            for (var daemon : index.getDaemons()) {
+                var factory = index.getFactory(daemon);
+
+                if (factory != null) {
+                    daemonFactories.put(daemon, factory);
+                }
+
+                daemonConflicts.put(daemon, index.getConflicts(daemon));
+
+                if (index.isLazy(daemon)) {
+                    lazyDaemons.add(daemon);
+                }
+            }
         }, State.INITIALIZED);
     }
 
+    /**
+     * Uses all the indexes provided as a {@link ServiceLoader service} by the class loader.
+     *
+     * @see #useIndex(DaemonIndex)
+     */
+    public void useIndexes(ClassLoader classLoader) {
+        ServiceLoader.load(DaemonIndex.class, classLoader).forEach(this::useIndex);
+    }
+
+    /**
+     * Uses the index, and registers all the daemons from it.
+     *
+     * @see #useIndex(DaemonIndex)
+     */
+    public void registerDaemons(DaemonIndex index) {
+        useIndex(index);
+        index.getDaemons().forEach(this::registerDaemon);
+    }
+
     public void load() {
         this.logger = bootLoader.getSystemLogger();
 
         state.setStateOrThrow(State.LOADING, State.INITIALIZED);
+        bootStartNanos = System.nanoTime();
 
         for (Class<? extends AbstractDaemon<?>> daemon : registeredDaemons) {
-            var conflicts = ReflectionUtil.getConflictingDaemons(daemon);
+            var conflicts = daemonConflicts.get(daemon);
+
+            // Not indexed
+            if (conflicts == null) {
+                conflicts = ReflectionUtil.getConflictingDaemons(daemon);
+
+                if (daemon.isAnnotationPresent(LazyDaemon.class)) {
+                    lazyDaemons.add(daemon);
+                }
+            }
 
             for (var conflict : conflicts) {
                 if (registeredDaemons.contains(conflict)) {
@@ -88,9 +332,14 @@ public class SystemDaemon {
             }
         }
 
-        var clone = new HashSet<>(registeredDaemons);
+        var bootPlanKey = bootPlanCaching ? BootPlan.computeKey(registeredDaemons) : null;
+        var bootPlan = bootPlanKey == null ? null : readBootPlan(bootPlanKey);
 
-        clone.forEach(this::loadDaemon);
+        for (var layer : planLoadingLayers(bootPlan)) {
+            // Lazy daemons needed while loading are constructed on demand.
+            layer.removeAll(lazyDaemons);
+            loadLayer(layer);
+        }
 
         needsConfiguration.forEach(daemon -> logger.warn("Daemon {} needs configuration", daemon.getShortName()));
 
@@ -99,59 +348,355 @@ public class SystemDaemon {
             panic();
         }
 
-        state.setStateOrThrow(State.POST_LOADING, State.LOADING);
+        var loaded = transition(State.POST_LOADING, State.LOADING, this::getLoadedDaemonsSnapshot);
 
-        loadedDaemons.values().forEach(this::postLoadDaemon);
+        runPhase(LifecyclePhase.POST_LOAD, loaded, this::postLoadDaemon);
 
+        freezeRegistry();
         state.setStateOrThrow(State.LOADED, State.POST_LOADING);
+
+        if (bootPlanKey != null) {
+            writeBootPlan(bootPlanKey, bootPlan);
+        }
     }
 
-    private <D extends AbstractDaemon<?>> D loadDaemon(Class<D> clazz) {
-        var loaded = loadedDaemons.get(clazz);
+    private File getBootPlanFile() {
+        return new File(bootLoader.getDataFolder(), "daemsus-boot.plan");
+    }
+
+    private BootPlan readBootPlan(String key) {
+        try {
+            return BootPlan.read(getBootPlanFile(), key, bootLoader.getClass().getClassLoader());
+        } catch (IOException e) {
+            logger.warn("Failed to read the boot plan, discovering dependencies", e);
+            return null;
+        }
+    }
+
+    private void writeBootPlan(String key, BootPlan previous) {
+        BootPlan plan;
 
-        if (loaded != null) {
-            if (loaded == dummyDaemon) {
-                throw new NeedsConfigurationException();
+        synchronized (daemonDependencyGraph) {
+            var loaded = new LinkedHashSet<Class<? extends AbstractDaemon<?>>>();
+
+            synchronized (loadedDaemons) {
+                loadedDaemons.forEach((clazz, daemon) -> {
+                    if (daemon != dummyDaemon) loaded.add(clazz);
+                });
             }
-            return (D) loaded;
+
+            plan = BootPlan.of(key, daemonDependencyGraph, loaded);
         }
 
+        if (plan.equals(previous)) return;
+
         try {
-            D instance;
+            var file = getBootPlanFile();
+            var parent = file.getParentFile();
+
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Failed to create directory: " + parent.getAbsolutePath());
+            }
+
+            plan.write(file);
+        } catch (IOException e) {
+            logger.warn("Failed to write the boot plan", e);
+        }
+    }
+
+    /**
+     * The plan only decides the order, in which the daemons are scheduled. If it turns out to be wrong, the missing dependencies are constructed on demand.
+     */
+    private List<Set<Class<? extends AbstractDaemon<?>>>> planLoadingLayers(BootPlan bootPlan) {
+        if (bootPlan != null) {
+            try {
+                var layers = DependencyUtil.constructLoadingLayers(bootPlan.toGraph());
+
+                // Registered daemons the plan does not know about are only possible if the plan is wrong.
+                var unplanned = new LinkedHashSet<>(registeredDaemons);
+                unplanned.removeAll(bootPlan.dependencies().keySet());
+
+                if (!unplanned.isEmpty()) {
+                    layers.add(unplanned);
+                }
+
+                return layers;
+            } catch (IllegalStateException e) {
+                logger.warn("The boot plan is corrupted, discovering dependencies", e);
+            }
+        }
+
+        synchronized (daemonDependencyGraph) {
+            return DependencyUtil.constructLoadingLayers(daemonDependencyGraph);
+        }
+    }
+
+    private void loadLayer(Collection<Class<? extends AbstractDaemon<?>>> layer) {
+        var tasks = new LinkedHashMap<Class<? extends AbstractDaemon<?>>, FutureTask<AbstractDaemon<?>>>();
+
+        for (var clazz : layer) {
+            var task = getLoadingTask(clazz);
+            tasks.put(clazz, task);
+            loadingExecutor.execute(task);
+        }
+
+        for (var task : tasks.entrySet()) {
             try {
-                Constructor<D> constructor = clazz.getDeclaredConstructor(getClass());
+                awaitLoadingTask(task.getKey(), task.getValue());
+            } catch (DaemonLoadingException e) {
+                reactToDaemonException(e.getCause(), e.getDaemon().getSimpleName(), "Exception while loading daemon {}");
+            }
+        }
+    }
+
+    private FutureTask<AbstractDaemon<?>> getLoadingTask(Class<? extends AbstractDaemon<?>> clazz) {
+        return loadingTasks.computeIfAbsent(clazz, x -> new FutureTask<>(() -> state.getState() == State.LOADING ? constructDaemon(x) : materializeDaemon(x)));
+    }
+
+    /**
+     * Runs the task on the current thread if nobody has picked it up yet, otherwise waits for it to finish.
+     * <p>
+     * Outside of {@link #load()}, the task is run while holding the lazy lock, so the system cannot move to another state in the meantime.
+     * Every thread running such a task holds the lock, so nested tasks are always run by the thread which needs them, and cannot deadlock.
+     */
+    private AbstractDaemon<?> awaitLoadingTask(Class<? extends AbstractDaemon<?>> clazz, FutureTask<AbstractDaemon<?>> task) {
+        // The time spent on the dependency is not counted towards the daemon waiting for it.
+        var span = profiler.beginWait();
 
-                constructor.setAccessible(true);
+        try {
+            return awaitLoadingTaskUnmeasured(clazz, task);
+        } finally {
+            span.close();
+        }
+    }
+
+    private AbstractDaemon<?> awaitLoadingTaskUnmeasured(Class<? extends AbstractDaemon<?>> clazz, FutureTask<AbstractDaemon<?>> task) {
+        if (!task.isDone()) {
+            if (state.getState() == State.LOADING) {
+                task.run();
+            } else {
+                lazyLock.lock();
+                try {
+                    if (!task.isDone()) {
+                        state.requireStatesOrThrow(MATERIALIZABLE_STATES);
+                        task.run();
+                        refreezeRegistry();
+                    }
+                } finally {
+                    lazyLock.unlock();
+                }
+            }
+        }
 
-                instance = constructor.newInstance(this);
-            } catch (NoSuchMethodException e) {
-                throw new IllegalArgumentException("Daemon class " + clazz.getName() + " does not have a constructor with one argument of type " + getClass().getName());
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DaemonLoadingException loadingException) {
+                throw loadingException;
+            }
+            throw new DaemonLoadingException(clazz, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a daemon to load", e);
+        }
+    }
+
+    /**
+     * @return The loaded daemon, or null if it needs configuration.
+     */
+    private <D extends AbstractDaemon<?>> D loadDaemon(Class<D> clazz) {
+        var loaded = awaitLoadingTask(clazz, getLoadingTask(clazz));
+
+        return loaded == dummyDaemon ? null : (D) loaded;
+    }
+
+    /**
+     * Constructs a daemon after the system has been loaded, and brings it to the same stage as the other daemons.
+     */
+    private AbstractDaemon<?> materializeDaemon(Class<? extends AbstractDaemon<?>> clazz) {
+        var systemState = state.getState();
+        var instance = constructDaemon(clazz);
+
+        if (instance == dummyDaemon) return instance;
+
+        try {
+            awaitStage(postLoadDaemon(instance));
+
+            if (systemState == State.STARTING || systemState == State.POST_STARTING || systemState == State.STARTED) {
+                awaitStage(startDaemon(instance));
+            }
+
+            // While starting, the post-start phase is yet to come and will post-start the daemon.
+            if (systemState == State.POST_STARTING || systemState == State.STARTED) {
+                awaitStage(postStartDaemon(instance));
+            }
+        } catch (Throwable e) {
+            throw new DaemonLoadingException(clazz, e);
+        }
+
+        return instance;
+    }
+
+    private AbstractDaemon<?> constructDaemon(Class<? extends AbstractDaemon<?>> clazz) {
+        try {
+            AbstractDaemon<?> instance;
+
+            var span = profiler.begin(clazz, LifecyclePhase.LOAD);
+
+            try {
+                instance = instantiateDaemon(clazz);
+            } finally {
+                span.close();
             }
 
             instance.getState().setStateOrThrow(State.POST_LOADING, State.LOADING);
-            loadedDaemons.put((Class<AbstractDaemon<?>>) clazz, instance);
-            whenLoaded.get(clazz).forEach(consumer -> consumer.accept(instance));
+            putLoadedDaemon(clazz, instance);
             return instance;
-        } catch (Exception e) {
-            if (e instanceof InvocationTargetException inv) {
-                if (inv.getCause() instanceof NeedsConfigurationException) {
-                    loadedDaemons.put((Class<AbstractDaemon<?>>) clazz, dummyDaemon);
-                    return null;
-                }
+        } catch (NeedsConfigurationException e) {
+            putLoadedDaemon(clazz, dummyDaemon);
+            return dummyDaemon;
+        } catch (DaemonLoadingException e) {
+            // A dependency of this daemon has failed, report the dependency instead.
+            throw e;
+        } catch (Throwable e) {
+            throw new DaemonLoadingException(clazz, e);
+        }
+    }
+
+    private AbstractDaemon<?> instantiateDaemon(Class<? extends AbstractDaemon<?>> clazz) throws Throwable {
+        var factory = daemonFactories.get(clazz);
+
+        if (factory != null) {
+            return factory.create(this);
+        }
+
+        try {
+            Constructor<? extends AbstractDaemon<?>> constructor = clazz.getDeclaredConstructor(getClass());
+
+            constructor.setAccessible(true);
+
+            return constructor.newInstance(this);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Daemon class " + clazz.getName() + " does not have a constructor with one argument of type " + getClass().getName());
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void putLoadedDaemon(Class<? extends AbstractDaemon<?>> clazz, AbstractDaemon<?> instance) {
+        Collection<Consumer<AbstractDaemon<?>>> consumers;
+
+        synchronized (whenLoaded) {
+            loadedDaemons.put((Class<AbstractDaemon<?>>) clazz, instance);
+            if (instance == dummyDaemon) return;
+            consumers = List.copyOf(whenLoaded.get(clazz));
+        }
+
+        consumers.forEach(consumer -> consumer.accept(instance));
+    }
+
+    /**
+     * @return The loaded daemons, without the ones needing configuration.
+     */
+    private List<AbstractDaemon<?>> getLoadedDaemonsSnapshot() {
+        var snapshot = new ArrayList<AbstractDaemon<?>>();
+
+        synchronized (loadedDaemons) {
+            for (var daemon : loadedDaemons.values()) {
+                if (daemon != dummyDaemon) snapshot.add(daemon);
             }
-            reactToDaemonException(e, clazz.getSimpleName(), "Exception while loading daemon {}");
-            return null;
         }
+
+        return snapshot;
     }
 
-    private void postLoadDaemon(AbstractDaemon<?> daemon) {
+    private void freezeRegistry() {
+        synchronized (daemonDependencyGraph) {
+            var ready = new LinkedHashMap<Class<AbstractDaemon<?>>, AbstractDaemon<?>>();
+            var dependencies = new HashMap<Class<?>, Set<Class<?>>>();
+
+            synchronized (loadedDaemons) {
+                loadedDaemons.forEach((clazz, daemon) -> {
+                    var task = loadingTasks.get(clazz);
+
+                    // Daemons still being loaded lazily are only published once they have been started.
+                    if (daemon != dummyDaemon && task != null && task.isDone()) ready.put(clazz, daemon);
+                });
+            }
+
+            for (var clazz : daemonDependencyGraph.nodes()) {
+                dependencies.put(clazz, Set.copyOf(daemonDependencyGraph.successors(clazz)));
+            }
+
+            registry = new DaemonRegistry(ready, dependencies);
+        }
+    }
+
+    /**
+     * Publishes a new registry, unless the system is not loaded yet, or has been unloaded.
+     */
+    private void refreezeRegistry() {
+        if (registry != null) freezeRegistry();
+    }
+
+    private CompletionStage<Void> postLoadDaemon(AbstractDaemon<?> daemon) {
         daemon.getState().requireStatesOrThrow(State.POST_LOADING);
+        return invokeHook(daemon, LifecyclePhase.POST_LOAD, daemon::postLoadAsync)
+                .thenRun(() -> daemon.getState().setStateOrThrow(State.LOADED, State.POST_LOADING));
+    }
+
+    /**
+     * Runs the hook of the daemon, and measures it until the returned stage completes.
+     */
+    private CompletionStage<Void> invokeHook(AbstractDaemon<?> daemon, LifecyclePhase phase, Supplier<CompletionStage<Void>> hook) {
+        var span = profiler.begin(daemon.getClass(), phase);
+        CompletionStage<Void> stage;
+
         try {
-            daemon.postLoad();
-        } catch (Exception e) {
-            reactToDaemonException(e, daemon.getClass().getSimpleName(), "Exception while post-loading daemon {}");
+            stage = hook.get();
+        } catch (RuntimeException | Error e) {
+            span.close();
+            throw e;
+        }
+
+        if (stage == null) {
+            span.close();
+            throw new IllegalStateException("Daemon " + daemon.getShortName() + " has returned no stage while " + phase.getVerb());
+        }
+
+        return span.closeWhenComplete(stage);
+    }
+
+    /**
+     * Waits for the stage on the current thread, rethrowing its failure.
+     */
+    private static void awaitStage(CompletionStage<Void> stage) {
+        try {
+            stage.toCompletableFuture().get();
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a daemon", e);
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * Changes the state of the system and takes the snapshot of the daemons to process atomically, with respect to lazy daemons being loaded.
+     */
+    private <T> T transition(State newState, State expectedState, Supplier<T> snapshot) {
+        lazyLock.lock();
+        try {
+            state.setStateOrThrow(newState, expectedState);
+            return snapshot.get();
+        } finally {
+            lazyLock.unlock();
         }
-        daemon.getState().setStateOrThrow(State.LOADED, State.POST_LOADING);
     }
 
     private void reactToDaemonException(Throwable e, String daemonName, String message) {
@@ -165,123 +710,300 @@ public class SystemDaemon {
     }
 
     /**
-     * This method never returns
+     * This method never returns. The daemons are torn down within the {@link #setPanicDeadline(Duration) panic deadline}, then the {@link ExitStrategy} is invoked.
+     * Should the strategy return, an exception is thrown instead.
      */
     private void panic() {
         state.setStateOrThrow(State.PANICKING, State.LOADING, State.POST_LOADING, State.STARTING, State.POST_STARTING);
+        registry = null;
         logger.error("PANIC - PANIC - PANIC");
-        logger.info("Stopping all daemons");
-        var reversed = new ArrayList<>(startedDaemons);
-
-        Collections.reverse(reversed);
 
-        reversed.forEach(this::stopDaemon);
-        logger.info("All daemons stopped");
-        logger.info("Unloading all daemons");
-        var reversed2 = new ArrayList<>(loadedDaemons.values());
+        var deadline = System.nanoTime() + panicDeadline.toNanos();
+        var executor = createPanicExecutor();
 
-        Collections.reverse(reversed2);
+        try {
+            logger.info("Stopping all daemons");
+            tearDown(LifecyclePhase.STOP, List.copyOf(startedDaemons), this::stopDaemon, executor, Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+            logger.info("Unloading all daemons");
+            tearDown(LifecyclePhase.UNLOAD, getUnloadableDaemons(), this::unLoadDaemon, executor, Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+        } finally {
+            // Abandoned daemons keep their threads, which do not prevent the process from exiting.
+            executor.shutdown();
+        }
 
-        reversed2.forEach(this::unLoadDaemon);
-        logger.info("All daemons unloaded");
+        state.setStateOrThrow(State.PANICKED, State.PANICKING);
         logger.error("PANIC - PANIC - PANIC");
 
-        try {
-            Thread.sleep(2500);
-        } catch (InterruptedException ignored) {
-        }
+        exitStrategy.exit(1);
+
+        throw new IllegalStateException("The system has panicked");
+    }
 
-        System.exit(1);
+    private ExecutorService createPanicExecutor() {
+        return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("daemsus-panic-%d")
+                .setDaemon(true)
+                .build());
     }
 
     public void unLoad() {
-        state.setStateOrThrow(State.UNLOADING, State.LOADED);
-        var reversed = new ArrayList<>(loadedDaemons.values());
+        var unloadable = transition(State.UNLOADING, State.LOADED, this::getUnloadableDaemons);
+        runPhase(LifecyclePhase.UNLOAD, unloadable, this::unLoadDaemon);
+        registry = null;
+        state.setStateOrThrow(State.UNLOADED, State.UNLOADING);
+    }
 
-        Collections.reverse(reversed);
+    private List<AbstractDaemon<?>> getUnloadableDaemons() {
+        var unloadable = new ArrayList<AbstractDaemon<?>>();
 
-        reversed.forEach(this::unLoadDaemon);
-        state.setStateOrThrow(State.UNLOADED, State.UNLOADING);
+        for (var daemon : getLoadedDaemonsSnapshot()) {
+            var daemonState = daemon.getState().getState();
+
+            if (daemonState == State.LOADED || daemonState == State.POST_LOADING) {
+                unloadable.add(daemon);
+            } else {
+                logger.warn("Daemon {} is {}, not unloading it", daemon.getShortName(), daemonState);
+            }
+        }
+
+        return unloadable;
     }
 
-    private void unLoadDaemon(AbstractDaemon<?> daemon) {
+    private CompletionStage<Void> unLoadDaemon(AbstractDaemon<?> daemon) {
         daemon.getState().setStateOrThrow(State.UNLOADING, State.LOADED, State.POST_LOADING);
+        var span = profiler.begin(daemon.getClass(), LifecyclePhase.UNLOAD);
+
         try {
             daemon.unLoad();
         } catch (Exception e) {
             reactToDaemonException(e, daemon.getClass().getSimpleName(), "Exception while unloading daemon {}, ignoring", false);
+        } finally {
+            span.close();
         }
         daemon.getState().setStateOrThrow(State.UNLOADED, State.UNLOADING);
+        return CompletableFuture.completedFuture(null);
     }
 
     public void stop() {
-        state.setStateOrThrow(State.STOPPING, State.STARTED);
-
-        var reversed = new ArrayList<>(startedDaemons);
+        var started = transition(State.STOPPING, State.STARTED, () -> List.copyOf(startedDaemons));
 
-        Collections.reverse(reversed);
-
-        reversed.forEach(this::stopDaemon);
+        runPhase(LifecyclePhase.STOP, started, this::stopDaemon);
 
         state.setStateOrThrow(State.LOADED, State.STOPPING);
     }
 
-    private void stopDaemon(AbstractDaemon<?> daemon) {
+    private CompletionStage<Void> stopDaemon(AbstractDaemon<?> daemon) {
         daemon.getState().setStateOrThrow(State.STOPPING, State.STARTED, State.POST_STARTING);
+
+        CompletionStage<Void> stage;
+
         try {
-            daemon.stop();
+            stage = invokeHook(daemon, LifecyclePhase.STOP, daemon::stopAsync);
         } catch (Exception e) {
-            reactToDaemonException(e, daemon.getClass().getSimpleName(), "Exception while stopping daemon {}, ignoring", false);
+            stage = CompletableFuture.failedFuture(e);
         }
-        daemon.getState().setStateOrThrow(State.LOADED, State.STOPPING);
+
+        return stage.<Void>handle((result, e) -> {
+            if (e != null) {
+                reactToDaemonException(unwrap(e), daemon.getClass().getSimpleName(), "Exception while stopping daemon {}, ignoring", false);
+            }
+
+            startedDaemons.remove(daemon);
+            daemon.getState().setStateOrThrow(State.LOADED, State.STOPPING);
+            return null;
+        });
     }
 
     public void start() {
-        state.setStateOrThrow(State.STARTING, State.LOADED);
+        var loaded = transition(State.STARTING, State.LOADED, this::getLoadedDaemonsSnapshot);
 
-        loadedDaemons.values().forEach(this::startDaemon);
+        runPhase(LifecyclePhase.START, loaded, this::startDaemon);
 
-        state.setStateOrThrow(State.POST_STARTING, State.STARTING);
+        var started = transition(State.POST_STARTING, State.STARTING, this::getLoadedDaemonsSnapshot);
 
-        loadedDaemons.values().forEach(this::postStartDaemon);
+        runPhase(LifecyclePhase.POST_START, started, this::postStartDaemon);
 
         state.setStateOrThrow(State.STARTED, State.POST_STARTING);
+
+        if (profiler.isEnabled()) {
+            reportBoot();
+        }
+    }
+
+    private void reportBoot() {
+        var timings = profiler.getTimings();
+        var bootTime = Duration.ofNanos(System.nanoTime() - bootStartNanos);
+
+        synchronized (daemonDependencyGraph) {
+            bootReport = BootReport.of(bootTime, timings, daemonDependencyGraph);
+        }
+
+        logger.info(bootReport.format());
     }
 
-    private void postStartDaemon(AbstractDaemon<?> daemon) {
+    private CompletionStage<Void> postStartDaemon(AbstractDaemon<?> daemon) {
         daemon.getState().requireStatesOrThrow(State.POST_STARTING);
+        var span = profiler.begin(daemon.getClass(), LifecyclePhase.POST_START);
+
         try {
             daemon.postStart();
-        } catch (Exception e) {
-            reactToDaemonException(e, daemon.getClass().getSimpleName(), "Exception while post-starting daemon {}");
+        } finally {
+            span.close();
         }
         daemon.getState().setStateOrThrow(State.STARTED, State.POST_STARTING);
+        return CompletableFuture.completedFuture(null);
     }
 
-    private void startDaemon(AbstractDaemon<?> daemon) {
+    private CompletionStage<Void> startDaemon(AbstractDaemon<?> daemon) {
         daemon.getState().setStateOrThrow(State.STARTING, State.LOADED);
-        try {
-            daemon.start();
+        return invokeHook(daemon, LifecyclePhase.START, daemon::startAsync).thenRun(() -> {
             startedDaemons.add(daemon);
-        } catch (Exception e) {
-            reactToDaemonException(e, daemon.getClass().getSimpleName(), "Exception while starting daemon {}");
+            daemon.getState().setStateOrThrow(State.POST_STARTING, State.STARTING);
+        });
+    }
+
+    /**
+     * Runs the phase in dependency order, every daemon as soon as the stages of all its dependencies have completed. Failures and timeouts cause a panic.
+     * Teardown phases are handed over to {@link #tearDown}, which runs them in reverse dependency order and only logs failures.
+     */
+    private void runPhase(LifecyclePhase phase, Collection<AbstractDaemon<?>> daemons, Function<AbstractDaemon<?>, CompletionStage<Void>> action) {
+        if (phase.isTeardown()) {
+            tearDown(phase, daemons, action, lifecycleExecutor, phaseDeadlines.get(phase));
+            return;
+        }
+
+        var report = new StageScheduler(lifecycleExecutor).run(daemons, getDependencies(daemons), action, null, phaseDeadlines.get(phase), true);
+
+        if (report.isComplete()) return;
+
+        report.failures().forEach((daemon, e) ->
+                reactToDaemonException(e, daemon.getClass().getSimpleName(), "Exception while " + phase.getVerb() + " daemon {}", false)
+        );
+        report.stragglers().forEach((daemon, straggler) -> logger.error("Daemon {} did not finish {} in time", daemon.getShortName(), phase.getVerb()));
+        report.skipped().forEach(daemon -> logger.error("Skipped {} daemon {}", phase.getVerb(), daemon.getShortName()));
+
+        panic();
+    }
+
+    /**
+     * Tears the daemons down, every daemon as soon as the stages of all the daemons depending on it have completed. Stragglers are abandoned and reported with their stack traces.
+     */
+    private void tearDown(LifecyclePhase phase, Collection<AbstractDaemon<?>> daemons, Function<AbstractDaemon<?>, CompletionStage<Void>> action,
+                          Executor executor, @Nullable Duration deadline) {
+        var report = new StageScheduler(executor).run(daemons, getDependents(daemons), action, daemonDeadlines.get(phase), deadline, false);
+
+        report.failures().forEach((daemon, e) ->
+                reactToDaemonException(e, daemon.getClass().getSimpleName(), "Exception while " + phase.getVerb() + " daemon {}", false)
+        );
+
+        report.stragglers().forEach((daemon, straggler) -> {
+            var message = new StringBuilder("Daemon {} has not finished {} after {} ms, abandoning it");
+
+            for (var element : straggler.stackTrace()) {
+                message.append("\n\tat ").append(element);
+            }
+
+            logger.error(message.toString(), daemon.getShortName(), phase.getVerb(), straggler.running().toMillis());
+        });
+
+        report.skipped().forEach(daemon -> logger.error("Skipped {} daemon {}", phase.getVerb(), daemon.getShortName()));
+    }
+
+    /**
+     * @return The daemons mapped to the daemons depending on them, both from the given daemons only.
+     */
+    private Map<AbstractDaemon<?>, List<AbstractDaemon<?>>> getDependents(Collection<AbstractDaemon<?>> daemons) {
+        return getNeighbours(daemons, daemonDependencyGraph::predecessors);
+    }
+
+    /**
+     * @return The daemons mapped to the daemons they depend on, both from the given daemons only.
+     */
+    private Map<AbstractDaemon<?>, List<AbstractDaemon<?>>> getDependencies(Collection<AbstractDaemon<?>> daemons) {
+        return getNeighbours(daemons, daemonDependencyGraph::successors);
+    }
+
+    private Map<AbstractDaemon<?>, List<AbstractDaemon<?>>> getNeighbours(Collection<AbstractDaemon<?>> daemons,
+                                                                          Function<Class<? extends AbstractDaemon<?>>, Set<Class<? extends AbstractDaemon<?>>>> neighbours) {
+        var result = new IdentityHashMap<AbstractDaemon<?>, List<AbstractDaemon<?>>>();
+        var included = Collections.newSetFromMap(new IdentityHashMap<AbstractDaemon<?>, Boolean>());
+        included.addAll(daemons);
+
+        synchronized (daemonDependencyGraph) {
+            for (var daemon : daemons) {
+                var clazz = (Class<? extends AbstractDaemon<?>>) daemon.getClass();
+                var list = new ArrayList<AbstractDaemon<?>>();
+
+                if (daemonDependencyGraph.nodes().contains(clazz)) {
+                    for (var neighbourClass : neighbours.apply(clazz)) {
+                        var neighbour = loadedDaemons.get(neighbourClass);
+                        if (neighbour != null && included.contains(neighbour)) list.add(neighbour);
+                    }
+                }
+
+                result.put(daemon, list);
+            }
+        }
+
+        return result;
+    }
+
+    private List<List<AbstractDaemon<?>>> getWaves(Collection<AbstractDaemon<?>> daemons) {
+        List<Set<Class<? extends AbstractDaemon<?>>>> layers;
+
+        synchronized (daemonDependencyGraph) {
+            layers = DependencyUtil.constructLoadingLayers(daemonDependencyGraph);
+        }
+
+        var included = Collections.newSetFromMap(new IdentityHashMap<AbstractDaemon<?>, Boolean>());
+        included.addAll(daemons);
+
+        var waves = new ArrayList<List<AbstractDaemon<?>>>(layers.size());
+
+        for (var layer : layers) {
+            var wave = new ArrayList<AbstractDaemon<?>>(layer.size());
+
+            for (var clazz : layer) {
+                var daemon = loadedDaemons.get(clazz);
+
+                if (daemon != null && included.contains(daemon)) {
+                    wave.add(daemon);
+                }
+            }
+
+            if (!wave.isEmpty()) waves.add(wave);
         }
-        daemon.getState().setStateOrThrow(State.POST_STARTING, State.STARTING);
+
+        return waves;
     }
 
+    /**
+     * Once loaded, a dependency which has already been recorded is returned from the frozen registry, without touching the dependency graph or taking any lock.
+     */
     protected <B extends BootLoader, D extends AbstractDaemon<B>> D obtainDependency(AbstractDaemon<?> caller, Class<D> clazz, boolean nullOnCycle) {
         if (caller.getClass().isAssignableFrom(clazz)) {
             return (D) caller;
         }
 
-        daemonDependencyGraph.putEdge((Class<? extends AbstractDaemon<?>>) caller.getClass(), clazz);
-        if (Graphs.hasCycle(daemonDependencyGraph)) {
+        var frozen = registry;
+
+        if (frozen != null && frozen.dependsOn(caller.getClass(), clazz)) {
+            var daemon = frozen.get(clazz);
+            if (daemon != null) return (D) daemon;
+        }
+
+        List<Class<? extends AbstractDaemon<?>>> cycle;
+
+        synchronized (daemonDependencyGraph) {
+            cycle = daemonOrder.tryPutEdge((Class<? extends AbstractDaemon<?>>) caller.getClass(), clazz);
+        }
+
+        if (cycle != null) {
             if (nullOnCycle) {
-                daemonDependencyGraph.removeEdge((Class<? extends AbstractDaemon<?>>) caller.getClass(), clazz);
                 return null;
             }
 
-            throw new IllegalStateException("Detected a cyclic dependency between daemons %s and %s".formatted(caller.getClass().getSimpleName(), clazz.getSimpleName()));
+            throw new IllegalStateException(DependencyUtil.describeCycle(cycle));
         }
 
         registeredDaemons.add(clazz);
@@ -292,17 +1014,182 @@ public class SystemDaemon {
             throw new NeedsConfigurationException();
         }
 
+        // The new edge is recorded, so the next call takes the fast path.
+        if (frozen != null) refreezeRegistry();
+
         return result;
     }
 
+    /**
+     * Restarts the daemon together with all the daemons depending on it, while the rest of the system keeps running.
+     * <p>
+     * The dependents are stopped and unloaded in reverse dependency order, then the daemon and its dependents are constructed again in dependency order,
+     * and brought to the stage of the system. The dependents are rebuilt rather than restarted in place, as they may hold objects obtained from the old instance,
+     * such as its executors, which do not survive it. If a daemon cannot be constructed again, the daemons depending on it are left unloaded.
+     *
+     * @param clazz The daemon to restart.
+     * @return The new instance of the daemon.
+     * @throws IllegalStateException If the system is neither loaded nor started, or if a daemon fails to come back.
+     */
+    public <D extends AbstractDaemon<?>> D restartDaemon(Class<D> clazz) {
+        lazyLock.lock();
+        try {
+            var systemState = state.getState();
+            state.requireStatesOrThrow(State.LOADED, State.STARTED);
+
+            var old = loadedDaemons.get(clazz);
+
+            if (old == null || old == dummyDaemon) {
+                throw new IllegalArgumentException("Daemon " + clazz.getName() + " is not loaded");
+            }
+
+            Set<Class<? extends AbstractDaemon<?>>> affectedClasses;
+
+            synchronized (daemonDependencyGraph) {
+                affectedClasses = Graphs.reachableNodes(Graphs.transpose(daemonDependencyGraph), clazz);
+            }
+
+            var affected = new ArrayList<AbstractDaemon<?>>();
+
+            for (var affectedClass : affectedClasses) {
+                var daemon = loadedDaemons.get(affectedClass);
+
+                if (daemon != null && daemon != dummyDaemon) {
+                    affected.add(daemon);
+                }
+            }
+
+            logger.info("Restarting daemon {} together with {} dependent daemons", old.getShortName(), affected.size() - 1);
+
+            // Everything runs on this thread, as the lazy lock is held.
+            var waves = getWaves(affected);
+            var reversed = new ArrayList<>(waves);
+            Collections.reverse(reversed);
+
+            for (var wave : reversed) {
+                for (var daemon : wave) {
+                    if (startedDaemons.contains(daemon)) awaitStage(stopDaemon(daemon));
+                }
+            }
+
+            for (var wave : reversed) {
+                for (var daemon : wave) {
+                    awaitStage(unLoadDaemon(daemon));
+                }
+            }
+
+            // Dropped before refreezing, so the new instances record their dependencies again, instead of finding them in the registry.
+            synchronized (daemonDependencyGraph) {
+                for (var daemon : affected) {
+                    var affectedClass = (Class<? extends AbstractDaemon<?>>) daemon.getClass();
+
+                    loadedDaemons.remove(affectedClass);
+                    loadingTasks.remove(affectedClass);
+                    daemonOrder.removeDependencies(affectedClass);
+                }
+            }
+
+            // Lookups of the daemons wait for the new instances from now on.
+            refreezeRegistry();
+
+            D replacement = null;
+
+            for (var wave : waves) {
+                for (var daemon : wave) {
+                    var rebuilt = rebuildDaemon((Class<? extends AbstractDaemon<?>>) daemon.getClass(), systemState);
+
+                    if (daemon == old) {
+                        if (rebuilt == null) {
+                            loadedDaemons.remove(clazz);
+                            loadingTasks.remove(clazz);
+                            throw new NeedsConfigurationException();
+                        }
+
+                        replacement = (D) rebuilt;
+                    } else if (rebuilt == null) {
+                        logger.warn("Daemon {} needs configuration after restarting {}, leaving it unloaded", daemon.getShortName(), old.getShortName());
+                    }
+                }
+            }
+
+            refreezeRegistry();
+
+            return replacement;
+        } finally {
+            lazyLock.unlock();
+        }
+    }
+
+    /**
+     * Constructs the daemon again, and checks it has reached the stage of the system.
+     *
+     * @return The new instance, or null if it needs configuration.
+     */
+    private AbstractDaemon<?> rebuildDaemon(Class<? extends AbstractDaemon<?>> clazz, State systemState) {
+        AbstractDaemon<?> rebuilt;
+
+        try {
+            rebuilt = loadDaemon(clazz);
+        } catch (RuntimeException e) {
+            loadingTasks.remove(clazz);
+            throw new IllegalStateException("Exception while restarting daemon " + clazz.getSimpleName(), e);
+        }
+
+        if (rebuilt == null) return null;
+
+        var expected = systemState == State.STARTED ? State.STARTED : State.LOADED;
+
+        if (rebuilt.getState().getState() != expected) {
+            throw new IllegalStateException("Daemon " + rebuilt.getShortName() + " is " + rebuilt.getState().getState() + " after restarting, expected " + expected);
+        }
+
+        return rebuilt;
+    }
+
+    /**
+     * Looks up a registered daemon. Lazy daemons are loaded, and started if the system has been started, by the first lookup.
+     * Once the system has been loaded, looking up a ready daemon is lock-free and takes constant time, from any thread.
+     *
+     * @return The daemon, or null if it is not registered, or needs configuration.
+     * @throws IllegalStateException If a lazy daemon is looked up while the system is not loaded.
+     */
+    public <D extends AbstractDaemon<?>> D getDaemon(Class<D> clazz) {
+        var frozen = registry;
+
+        if (frozen != null) {
+            var daemon = frozen.get(clazz);
+            if (daemon != null) return (D) daemon;
+        }
+
+        if (!registeredDaemons.contains(clazz)) return null;
+
+        return loadDaemon(clazz);
+    }
+
     public <B extends BootLoader, D extends AbstractDaemon<B>> void whenLoaded(Class<D> clazz, Consumer<D> consumer) {
-        var loaded = loadedDaemons.get(clazz);
+        var frozen = registry;
 
-        if (loaded != null) {
-            consumer.accept((D) loaded);
-        } else {
-            whenLoaded.put(clazz, k -> consumer.accept((D) k));
+        if (frozen != null) {
+            var daemon = frozen.get(clazz);
+
+            if (daemon != null) {
+                consumer.accept((D) daemon);
+                return;
+            }
         }
+
+        AbstractDaemon<?> loaded;
+
+        synchronized (whenLoaded) {
+            loaded = loadedDaemons.get(clazz);
+
+            if (loaded == null || loaded == dummyDaemon) {
+                whenLoaded.put(clazz, k -> consumer.accept((D) k));
+                return;
+            }
+        }
+
+        consumer.accept((D) loaded);
     }
 
 }
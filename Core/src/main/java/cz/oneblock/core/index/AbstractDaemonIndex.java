@@ -0,0 +1,61 @@
+package cz.oneblock.core.index;
+
+import cz.oneblock.core.AbstractDaemon;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * The base of the generated indexes.
+ */
+public abstract class AbstractDaemonIndex implements DaemonIndex {
+
+    private final Map<Class<?>, DaemonFactory> factories;
+    private final Map<Class<?>, Collection<Class<? extends AbstractDaemon<?>>>> conflicts;
+    private final Set<Class<?>> lazy;
+    private final List<Class<? extends AbstractDaemon<?>>> daemons;
+
+    protected AbstractDaemonIndex() {
+        this.factories = new HashMap<>();
+        this.conflicts = new HashMap<>();
+        this.lazy = new HashSet<>();
+        this.daemons = new ArrayList<>();
+    }
+
+    protected void register(Class<? extends AbstractDaemon<?>> daemon, @Nullable DaemonFactory factory, Collection<Class<? extends AbstractDaemon<?>>> conflicts) {
+        register(daemon, factory, conflicts, false);
+    }
+
+    protected void register(Class<? extends AbstractDaemon<?>> daemon, @Nullable DaemonFactory factory, Collection<Class<? extends AbstractDaemon<?>>> conflicts, boolean lazy) {
+        daemons.add(daemon);
+
+        if (lazy) {
+            this.lazy.add(daemon);
+        }
+        this.conflicts.put(daemon, conflicts);
+
+        if (factory != null) {
+            factories.put(daemon, factory);
+        }
+    }
+
+    @Override
+    public Collection<Class<? extends AbstractDaemon<?>>> getDaemons() {
+        return Collections.unmodifiableList(daemons);
+    }
+
+    @Override
+    public @Nullable DaemonFactory getFactory(Class<?> daemon) {
+        return factories.get(daemon);
+    }
+
+    @Override
+    public @Nullable Collection<Class<? extends AbstractDaemon<?>>> getConflicts(Class<?> daemon) {
+        return conflicts.get(daemon);
+    }
+
+    @Override
+    public boolean isLazy(Class<?> daemon) {
+        return lazy.contains(daemon);
+    }
+}
@@ -0,0 +1,14 @@
+package cz.oneblock.core.index;
+
+import cz.oneblock.core.AbstractDaemon;
+import cz.oneblock.core.SystemDaemon;
+
+/**
+ * Constructs a daemon by calling its constructor directly.
+ */
+@FunctionalInterface
+public interface DaemonFactory {
+
+    AbstractDaemon<?> create(SystemDaemon systemDaemon);
+
+}
@@ -0,0 +1,36 @@
+package cz.oneblock.core.index;
+
+import cz.oneblock.core.AbstractDaemon;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+
+/**
+ * A list of daemon classes together with everything needed to construct them without reflection.
+ * Implementations are generated at compile time by the Daemsus annotation processor, and registered as a {@link java.util.ServiceLoader service}.
+ *
+ * @see cz.oneblock.core.SystemDaemon#useIndex(DaemonIndex)
+ */
+public interface DaemonIndex {
+
+    Collection<Class<? extends AbstractDaemon<?>>> getDaemons();
+
+    /**
+     * @return The factory, or null if the constructor of the daemon cannot be called directly.
+     */
+    @Nullable
+    DaemonFactory getFactory(Class<?> daemon);
+
+    /**
+     * @return The daemons the daemon conflicts with, or null if the daemon is not part of this index.
+     * @see cz.oneblock.core.util.DaemonConflict
+     */
+    @Nullable
+    Collection<Class<? extends AbstractDaemon<?>>> getConflicts(Class<?> daemon);
+
+    /**
+     * @see cz.oneblock.core.util.LazyDaemon
+     */
+    boolean isLazy(Class<?> daemon);
+
+}
@@ -0,0 +1,178 @@
+package cz.oneblock.core.lifecycle;
+
+import com.google.common.graph.Graph;
+import com.google.common.graph.GraphBuilder;
+import com.google.common.graph.MutableGraph;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import cz.oneblock.core.AbstractDaemon;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * The dependency graph resolved during a previous boot. It allows scheduling the loading up front, instead of discovering the dependencies one constructor at a time.
+ * <p>
+ * The plan is keyed by the registered daemons and the bytecode of every daemon it contains. A plan, which does not match the current daemons, is never used.
+ *
+ * @param key          The key of the registered daemons, see {@link #computeKey(Collection)}.
+ * @param dependencies The daemons mapped to their direct dependencies.
+ */
+@SuppressWarnings({"UnstableApiUsage", "unchecked"})
+public record BootPlan(String key, Map<Class<? extends AbstractDaemon<?>>, Set<Class<? extends AbstractDaemon<?>>>> dependencies) {
+
+    private static final String HEADER = "daemsus-boot-plan 1";
+
+    /**
+     * Creates a plan from the graph, only including the given daemons.
+     */
+    public static BootPlan of(String key, Graph<Class<? extends AbstractDaemon<?>>> graph, Collection<Class<? extends AbstractDaemon<?>>> daemons) {
+        var dependencies = new LinkedHashMap<Class<? extends AbstractDaemon<?>>, Set<Class<? extends AbstractDaemon<?>>>>();
+
+        for (var daemon : daemons) {
+            var successors = new LinkedHashSet<Class<? extends AbstractDaemon<?>>>();
+
+            for (var dependency : graph.successors(daemon)) {
+                if (daemons.contains(dependency)) successors.add(dependency);
+            }
+
+            dependencies.put(daemon, successors);
+        }
+
+        return new BootPlan(key, dependencies);
+    }
+
+    /**
+     * @return A key, which changes whenever a daemon is registered, unregistered, or recompiled.
+     */
+    public static String computeKey(Collection<Class<? extends AbstractDaemon<?>>> registered) {
+        var sorted = new ArrayList<>(registered);
+        sorted.sort(Comparator.comparing(Class::getName));
+
+        Hasher hasher = Hashing.sha256().newHasher();
+
+        for (var daemon : sorted) {
+            hasher.putString(daemon.getName(), StandardCharsets.UTF_8);
+            hasher.putString(hashClass(daemon), StandardCharsets.UTF_8);
+        }
+
+        return hasher.hash().toString();
+    }
+
+    /**
+     * @return The hash of the bytecode of the class, or "-" if the bytecode is not available.
+     */
+    private static String hashClass(Class<?> clazz) {
+        var loader = clazz.getClassLoader();
+
+        if (loader == null) return "-";
+
+        try (var stream = loader.getResourceAsStream(clazz.getName().replace('.', '/') + ".class")) {
+            if (stream == null) return "-";
+            return Hashing.sha256().hashBytes(ByteStreams.toByteArray(stream)).toString();
+        } catch (IOException e) {
+            return "-";
+        }
+    }
+
+    /**
+     * @return The plan, or null if there is none, or it does not match the current daemons.
+     */
+    @Nullable
+    public static BootPlan read(File file, String expectedKey, ClassLoader classLoader) throws IOException {
+        if (!file.isFile()) return null;
+
+        try (var reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            if (!HEADER.equals(reader.readLine())) return null;
+            if (!expectedKey.equals(reader.readLine())) return null;
+
+            var names = new LinkedHashMap<String, List<String>>();
+            String line;
+
+            // <daemon> <hash>: <dependency> <dependency>...
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+
+                var separator = line.indexOf(':');
+                if (separator < 0) return null;
+
+                var head = line.substring(0, separator).split(" ");
+                if (head.length != 2) return null;
+
+                var daemon = resolve(head[0], classLoader);
+                if (daemon == null || !head[1].equals(hashClass(daemon))) return null;
+
+                var tail = line.substring(separator + 1).trim();
+                names.put(head[0], tail.isEmpty() ? List.of() : List.of(tail.split(" ")));
+            }
+
+            var dependencies = new LinkedHashMap<Class<? extends AbstractDaemon<?>>, Set<Class<? extends AbstractDaemon<?>>>>();
+
+            for (var entry : names.entrySet()) {
+                var successors = new LinkedHashSet<Class<? extends AbstractDaemon<?>>>();
+
+                for (var dependency : entry.getValue()) {
+                    if (!names.containsKey(dependency)) return null;
+                    successors.add(resolve(dependency, classLoader));
+                }
+
+                dependencies.put(resolve(entry.getKey(), classLoader), successors);
+            }
+
+            return new BootPlan(expectedKey, dependencies);
+        }
+    }
+
+    @Nullable
+    private static Class<? extends AbstractDaemon<?>> resolve(String name, ClassLoader classLoader) {
+        try {
+            var clazz = Class.forName(name, false, classLoader);
+            return AbstractDaemon.class.isAssignableFrom(clazz) ? (Class<? extends AbstractDaemon<?>>) clazz : null;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the plan to a temporary file first, so a crash cannot leave a half-written plan behind.
+     */
+    public void write(File file) throws IOException {
+        var builder = new StringBuilder()
+                .append(HEADER).append('\n')
+                .append(key).append('\n');
+
+        dependencies.forEach((daemon, successors) -> {
+            builder.append(daemon.getName()).append(' ').append(hashClass(daemon)).append(':');
+
+            for (var dependency : successors) {
+                builder.append(' ').append(dependency.getName());
+            }
+
+            builder.append('\n');
+        });
+
+        var temporary = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        Files.writeString(temporary.toPath(), builder, StandardCharsets.UTF_8);
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public MutableGraph<Class<? extends AbstractDaemon<?>>> toGraph() {
+        MutableGraph<Class<? extends AbstractDaemon<?>>> graph = GraphBuilder.directed()
+                .allowsSelfLoops(false)
+                .build();
+
+        dependencies.forEach((daemon, successors) -> {
+            graph.addNode(daemon);
+            successors.forEach(dependency -> graph.putEdge(daemon, dependency));
+        });
+
+        return graph;
+    }
+
+}
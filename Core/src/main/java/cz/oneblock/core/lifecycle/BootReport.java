@@ -0,0 +1,73 @@
+package cz.oneblock.core.lifecycle;
+
+import com.google.common.graph.Graph;
+import cz.oneblock.core.util.DependencyUtil;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A summary of the boot, from the start of loading to the end of post-starting.
+ *
+ * @param bootTime         The wall time of the entire boot.
+ * @param timings          The boot phases of every daemon.
+ * @param criticalPath     The chain of dependencies with the highest cost, dependencies first. No schedule can boot faster than this chain.
+ * @param criticalPathTime The cost of the critical path.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public record BootReport(Duration bootTime, Map<Class<?>, Map<LifecyclePhase, PhaseTiming>> timings, List<Class<?>> criticalPath, Duration criticalPathTime) {
+
+    private static final Set<LifecyclePhase> BOOT_PHASES = EnumSet.of(LifecyclePhase.LOAD, LifecyclePhase.POST_LOAD, LifecyclePhase.START, LifecyclePhase.POST_START);
+    private static final int SLOWEST_DAEMONS = 10;
+
+    public static <N extends Class<?>> BootReport of(Duration bootTime, Map<Class<?>, Map<LifecyclePhase, PhaseTiming>> timings, Graph<N> graph) {
+        var path = DependencyUtil.constructCriticalPath(graph, daemon -> getBootNanos(timings.get(daemon)));
+        var pathNanos = path.stream().mapToLong(daemon -> getBootNanos(timings.get(daemon))).sum();
+
+        return new BootReport(bootTime, timings, List.copyOf(path), Duration.ofNanos(pathNanos));
+    }
+
+    private static long getBootNanos(Map<LifecyclePhase, PhaseTiming> phases) {
+        if (phases == null) return 0;
+
+        var nanos = 0L;
+
+        for (var phase : BOOT_PHASES) {
+            var timing = phases.get(phase);
+            if (timing != null) nanos += timing.wallNanos();
+        }
+
+        return nanos;
+    }
+
+    /**
+     * @return A human-readable report, listing the critical path and the slowest daemons.
+     */
+    public String format() {
+        var builder = new StringBuilder()
+                .append("Boot took ").append(bootTime.toMillis()).append(" ms, ")
+                .append("the critical path took ").append(criticalPathTime.toMillis()).append(" ms: ")
+                .append(criticalPath.stream().map(Class::getSimpleName).collect(Collectors.joining(" -> ")));
+
+        var slowest = new ArrayList<>(timings.entrySet());
+        slowest.sort(Comparator.comparingLong((Map.Entry<Class<?>, Map<LifecyclePhase, PhaseTiming>> entry) -> getBootNanos(entry.getValue())).reversed());
+
+        for (var entry : slowest.subList(0, Math.min(SLOWEST_DAEMONS, slowest.size()))) {
+            builder.append('\n').append("  ").append(entry.getKey().getSimpleName()).append(':');
+
+            for (var phase : BOOT_PHASES) {
+                var timing = entry.getValue().get(phase);
+                if (timing == null) continue;
+
+                builder.append(' ').append(phase.name().toLowerCase(Locale.ROOT)).append('=')
+                        .append(TimeUnit.NANOSECONDS.toMicros(timing.wallNanos()) / 1000.0).append("ms/")
+                        .append(timing.allocatedBytes() / 1024).append("KiB");
+            }
+        }
+
+        return builder.toString();
+    }
+
+}
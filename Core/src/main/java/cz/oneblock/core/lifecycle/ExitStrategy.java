@@ -0,0 +1,21 @@
+package cz.oneblock.core.lifecycle;
+
+/**
+ * Ends the process after a panic. Embedding applications and tests may replace it, for example by an implementation which only records the status.
+ */
+@FunctionalInterface
+public interface ExitStrategy {
+
+    /**
+     * Runs the shutdown hooks and exits, see {@link System#exit(int)}. Must not be used from a shutdown hook.
+     */
+    ExitStrategy SYSTEM_EXIT = System::exit;
+
+    /**
+     * Exits immediately without running the shutdown hooks, see {@link Runtime#halt(int)}.
+     */
+    ExitStrategy HALT = status -> Runtime.getRuntime().halt(status);
+
+    void exit(int status);
+
+}
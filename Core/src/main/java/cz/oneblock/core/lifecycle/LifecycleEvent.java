@@ -0,0 +1,28 @@
+package cz.oneblock.core.lifecycle;
+
+import jdk.jfr.*;
+
+/**
+ * Recorded by Java Flight Recorder for every lifecycle phase of every daemon. The duration of the event includes the nested phases of other daemons, the self time does not.
+ */
+@Name("cz.oneblock.core.Lifecycle")
+@Label("Daemon Lifecycle Phase")
+@Category({"Daemsus", "Lifecycle"})
+@StackTrace(false)
+class LifecycleEvent extends Event {
+
+    @Label("Daemon")
+    String daemon;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Self Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long selfTime;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+
+}
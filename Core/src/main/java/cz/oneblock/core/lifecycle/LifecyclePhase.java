@@ -0,0 +1,30 @@
+package cz.oneblock.core.lifecycle;
+
+public enum LifecyclePhase {
+    LOAD("loading"),
+    POST_LOAD("post-loading"),
+    START("starting"),
+    POST_START("post-starting"),
+    STOP("stopping"),
+    UNLOAD("unloading");
+
+    private final String verb;
+
+    LifecyclePhase(String verb) {
+        this.verb = verb;
+    }
+
+    /**
+     * @return The verb used in log messages, for example "starting".
+     */
+    public String getVerb() {
+        return verb;
+    }
+
+    /**
+     * @return Whether this phase tears the daemons down, and therefore runs in reverse dependency order.
+     */
+    public boolean isTeardown() {
+        return this == STOP || this == UNLOAD;
+    }
+}
@@ -0,0 +1,188 @@
+package cz.oneblock.core.lifecycle;
+
+import jdk.jfr.FlightRecorder;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures the lifecycle phases of the daemons. A phase running another phase on the same thread, or waiting for another daemon, does not count that time as its own.
+ * <p>
+ * A measurement costs two {@link System#nanoTime()} calls, two reads of the allocation counter of the thread, and one small object, so it can stay enabled in production.
+ * {@link LifecycleEvent JFR events} are only emitted while the flight recorder is running.
+ */
+public class LifecycleProfiler {
+
+    @Nullable
+    private static final com.sun.management.ThreadMXBean THREADS = resolveThreads();
+
+    private final ThreadLocal<Span> current = new ThreadLocal<>();
+    private final Map<Class<?>, Map<LifecyclePhase, PhaseTiming>> timings = new ConcurrentHashMap<>();
+    private final Span noop = new Span(null, null, null);
+    private volatile boolean enabled = true;
+
+    @Nullable
+    private static com.sun.management.ThreadMXBean resolveThreads() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads && threads.isThreadAllocatedMemorySupported()) {
+                return threads;
+            }
+        } catch (LinkageError ignored) {
+            // Not a HotSpot based JVM.
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS == null) return 0;
+
+        var allocated = THREADS.getCurrentThreadAllocatedBytes();
+        return Math.max(allocated, 0);
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts measuring the phase of the daemon. The returned span must be closed on the same thread.
+     */
+    public Span begin(Class<?> daemon, LifecyclePhase phase) {
+        if (!enabled) return noop;
+
+        var span = new Span(daemon, phase, current.get());
+        current.set(span);
+        return span;
+    }
+
+    /**
+     * Starts waiting for another daemon. The time spent until the returned span is closed is not counted towards the phase running on this thread.
+     */
+    public Span beginWait() {
+        var parent = current.get();
+
+        // Nothing to exclude the time from.
+        if (parent == null) return noop;
+
+        var span = new Span(null, null, parent);
+        current.set(span);
+        return span;
+    }
+
+    /**
+     * @return The timings measured so far, by daemon and phase.
+     */
+    public Map<Class<?>, Map<LifecyclePhase, PhaseTiming>> getTimings() {
+        var snapshot = new LinkedHashMap<Class<?>, Map<LifecyclePhase, PhaseTiming>>();
+
+        timings.forEach((daemon, phases) -> {
+            synchronized (phases) {
+                snapshot.put(daemon, Collections.unmodifiableMap(new EnumMap<>(phases)));
+            }
+        });
+
+        return snapshot;
+    }
+
+    private void record(Class<?> daemon, LifecyclePhase phase, PhaseTiming timing) {
+        var phases = timings.computeIfAbsent(daemon, x -> new EnumMap<>(LifecyclePhase.class));
+
+        synchronized (phases) {
+            phases.put(phase, timing);
+        }
+    }
+
+    private void extend(Class<?> daemon, LifecyclePhase phase, long nanos) {
+        var phases = timings.get(daemon);
+
+        if (phases == null) return;
+
+        synchronized (phases) {
+            phases.computeIfPresent(phase, (x, timing) -> new PhaseTiming(timing.wallNanos() + nanos, timing.allocatedBytes()));
+        }
+    }
+
+    public final class Span implements AutoCloseable {
+
+        private final Class<?> daemon;
+        private final LifecyclePhase phase;
+        private final Span parent;
+        private final LifecycleEvent event;
+        private final long startNanos;
+        private final long startBytes;
+        private long excludedNanos;
+        private long excludedBytes;
+
+        private Span(@Nullable Class<?> daemon, @Nullable LifecyclePhase phase, @Nullable Span parent) {
+            this.daemon = daemon;
+            this.phase = phase;
+            this.parent = parent;
+
+            // The first event initializes the flight recorder, which takes hundreds of milliseconds, so events are only created while it is running.
+            if (daemon != null && FlightRecorder.isInitialized()) {
+                this.event = new LifecycleEvent();
+                event.begin();
+            } else {
+                this.event = null;
+            }
+
+            this.startNanos = System.nanoTime();
+            this.startBytes = allocatedBytes();
+        }
+
+        @Override
+        public void close() {
+            if (this == noop) return;
+
+            var wall = System.nanoTime() - startNanos;
+            var bytes = allocatedBytes() - startBytes;
+
+            if (parent == null) {
+                current.remove();
+            } else {
+                current.set(parent);
+                parent.excludedNanos += wall;
+                parent.excludedBytes += bytes;
+            }
+
+            if (daemon == null) return;
+
+            var timing = new PhaseTiming(wall - excludedNanos, bytes - excludedBytes);
+            record(daemon, phase, timing);
+
+            if (event == null) return;
+
+            event.end();
+
+            if (event.shouldCommit()) {
+                event.daemon = daemon.getName();
+                event.phase = phase.name();
+                event.selfTime = timing.wallNanos();
+                event.allocated = timing.allocatedBytes();
+                event.commit();
+            }
+        }
+
+        /**
+         * Closes the span, and adds the time until the stage completes to the wall time of the phase. Allocations made by the stage on other threads are not measured.
+         */
+        public <T extends CompletionStage<?>> T closeWhenComplete(T stage) {
+            close();
+
+            if (daemon == null) return stage;
+
+            var closedNanos = System.nanoTime();
+            stage.whenComplete((result, e) -> extend(daemon, phase, System.nanoTime() - closedNanos));
+
+            return stage;
+        }
+    }
+
+}
@@ -0,0 +1,10 @@
+package cz.oneblock.core.lifecycle;
+
+/**
+ * The cost of one lifecycle phase of one daemon. Phases of other daemons run from within it, for example dependencies constructed by a constructor, are not included.
+ *
+ * @param wallNanos      The wall time.
+ * @param allocatedBytes The bytes allocated by the thread running the phase, or 0 if the JVM does not measure them.
+ */
+public record PhaseTiming(long wallNanos, long allocatedBytes) {
+}
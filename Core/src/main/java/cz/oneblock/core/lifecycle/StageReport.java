@@ -0,0 +1,28 @@
+package cz.oneblock.core.lifecycle;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The outcome of {@link StageScheduler#run}.
+ *
+ * @param failures   The nodes whose action threw, or whose stage completed exceptionally, mapped to the exception.
+ * @param stragglers The nodes whose action missed a deadline and has been abandoned, mapped to their straggler details.
+ * @param skipped    The nodes whose action was never started, as the overall deadline has passed or another node has failed first.
+ * @param elapsed    The time the scheduler has waited for.
+ */
+public record StageReport<N>(Map<N, Throwable> failures, Map<N, Straggler> stragglers, Set<N> skipped, Duration elapsed) {
+
+    public boolean isComplete() {
+        return failures.isEmpty() && stragglers.isEmpty() && skipped.isEmpty();
+    }
+
+    /**
+     * @param running    How long the action had been running for when it was abandoned.
+     * @param stackTrace Where the action was stuck, empty if it has returned a stage, which has not completed yet.
+     */
+    public record Straggler(Duration running, StackTraceElement[] stackTrace) {
+    }
+
+}
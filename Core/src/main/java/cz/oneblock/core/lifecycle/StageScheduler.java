@@ -0,0 +1,190 @@
+package cz.oneblock.core.lifecycle;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Runs an asynchronous action over a graph of nodes. A node is started as soon as the stages of all its prerequisites have completed,
+ * so independent branches of the graph overlap, and a node never has to wait for unrelated ones.
+ * <p>
+ * The actions are always handed to the executor by the thread calling {@link #run}, never by the thread completing a stage.
+ * With a direct executor, every action is therefore started on the calling thread, even when the stages complete elsewhere.
+ * <p>
+ * An action, which misses the deadline of a single node, is abandoned and its dependent nodes are started anyway.
+ * Once the overall deadline passes, the scheduler stops waiting and does not start any more actions. Abandoned actions are not interrupted.
+ */
+public class StageScheduler {
+
+    private final Executor executor;
+
+    public StageScheduler(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Please be aware, that a deadline cannot interrupt an action running on the calling thread, it is only noticed once the action returns.
+     *
+     * @param nodes         The nodes to run the action for.
+     * @param prerequisites The nodes, which have to complete before each node. Nodes missing from the map have no prerequisites.
+     * @param action        The action to run for every node, the node completes with the returned stage.
+     * @param nodeDeadline  The deadline for the stage of a single node, or null if there is none.
+     * @param deadline      The deadline for all the nodes together, or null if there is none.
+     * @param failFast      Whether to stop starting nodes after the first failure. Nodes already started are still waited for.
+     */
+    public <N> StageReport<N> run(Collection<N> nodes, Map<N, ? extends Collection<N>> prerequisites, Function<N, ? extends CompletionStage<?>> action,
+                                  @Nullable Duration nodeDeadline, @Nullable Duration deadline, boolean failFast) {
+        return new Run<>(nodes, prerequisites, action, nodeDeadline).await(deadline, failFast);
+    }
+
+    private class Run<N> {
+
+        private final Set<N> nodes;
+        private final Function<N, ? extends CompletionStage<?>> action;
+        private final Duration nodeDeadline;
+
+        // Only touched by the calling thread.
+        private final Map<N, Integer> pending = new HashMap<>();
+        private final Map<N, List<N>> waiting = new HashMap<>();
+        private final Set<N> started = new HashSet<>();
+
+        // Nodes which have completed, failed or have been abandoned, each exactly once.
+        private final BlockingQueue<N> settled = new LinkedBlockingQueue<>();
+        private final Set<N> settledOnce = ConcurrentHashMap.newKeySet();
+        private final Map<N, Thread> running = new ConcurrentHashMap<>();
+        private final Map<N, Long> startedAt = new ConcurrentHashMap<>();
+        private final Map<N, Throwable> failures = new ConcurrentHashMap<>();
+        private final Set<N> abandoned = ConcurrentHashMap.newKeySet();
+
+        private Run(Collection<N> nodes, Map<N, ? extends Collection<N>> prerequisites, Function<N, ? extends CompletionStage<?>> action, @Nullable Duration nodeDeadline) {
+            this.nodes = new LinkedHashSet<>(nodes);
+            this.action = action;
+            this.nodeDeadline = nodeDeadline;
+
+            for (N node : this.nodes) {
+                var count = 0;
+                Collection<N> nodePrerequisites = prerequisites.get(node);
+
+                if (nodePrerequisites != null) {
+                    for (N prerequisite : nodePrerequisites) {
+                        if (prerequisite.equals(node) || !this.nodes.contains(prerequisite)) continue;
+
+                        waiting.computeIfAbsent(prerequisite, x -> new ArrayList<>()).add(node);
+                        count++;
+                    }
+                }
+
+                pending.put(node, count);
+            }
+        }
+
+        private StageReport<N> await(@Nullable Duration deadline, boolean failFast) {
+            var startNanos = System.nanoTime();
+            var deadlineNanos = deadline == null ? 0 : startNanos + deadline.toNanos();
+            var settledCount = 0;
+            var stopped = false;
+
+            for (N node : nodes) {
+                if (pending.get(node) == 0) start(node);
+            }
+
+            try {
+                while (settledCount < started.size()) {
+                    N node = deadline == null ? settled.take() : settled.poll(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                    // The overall deadline has passed.
+                    if (node == null) break;
+
+                    settledCount++;
+
+                    if (failFast && failures.containsKey(node)) stopped = true;
+                    if (stopped) continue;
+
+                    for (N next : waiting.getOrDefault(node, List.of())) {
+                        if (pending.merge(next, -1, Integer::sum) == 0) start(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return report(Duration.ofNanos(System.nanoTime() - startNanos));
+        }
+
+        private void start(N node) {
+            started.add(node);
+            startedAt.put(node, System.nanoTime());
+
+            if (nodeDeadline != null) {
+                CompletableFuture.delayedExecutor(nodeDeadline.toNanos(), TimeUnit.NANOSECONDS, Runnable::run).execute(() -> {
+                    if (settledOnce.add(node)) {
+                        abandoned.add(node);
+                        settled.add(node);
+                    }
+                });
+            }
+
+            try {
+                executor.execute(() -> invoke(node));
+            } catch (RejectedExecutionException e) {
+                settle(node, e);
+            }
+        }
+
+        private void invoke(N node) {
+            CompletionStage<?> stage;
+
+            running.put(node, Thread.currentThread());
+
+            try {
+                stage = action.apply(node);
+            } catch (Throwable e) {
+                settle(node, e);
+                return;
+            } finally {
+                running.remove(node);
+            }
+
+            if (stage == null) {
+                settle(node, null);
+            } else {
+                stage.whenComplete((result, e) -> settle(node, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e));
+            }
+        }
+
+        private void settle(N node, @Nullable Throwable failure) {
+            if (!settledOnce.add(node)) return;
+
+            if (failure != null) failures.put(node, failure);
+            settled.add(node);
+        }
+
+        private StageReport<N> report(Duration elapsed) {
+            var stragglers = new LinkedHashMap<N, StageReport.Straggler>();
+            var skipped = new LinkedHashSet<N>();
+            var now = System.nanoTime();
+
+            for (N node : nodes) {
+                var start = startedAt.get(node);
+
+                if (start == null) {
+                    skipped.add(node);
+                    continue;
+                }
+
+                // Still running, or completed only after being abandoned.
+                if (abandoned.contains(node) || !settledOnce.contains(node)) {
+                    var thread = running.get(node);
+                    var stackTrace = thread == null ? new StackTraceElement[0] : thread.getStackTrace();
+                    stragglers.put(node, new StageReport.Straggler(Duration.ofNanos(now - start), stackTrace));
+                }
+            }
+
+            return new StageReport<>(Map.copyOf(failures), stragglers, skipped, elapsed);
+        }
+    }
+
+}
@@ -1,99 +1,204 @@
 package cz.oneblock.core.state;
 
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
 /**
- * This is used to hold the state. Even though thread-safe, it could be written better.
+ * This is used to hold the state. It does not lock, the state is swapped by compare-and-set, and every transition is checked against {@link #isLegalTransition(State, State)}.
+ * <p>
+ * The checks taking a single state, or a set of states, do not allocate, so they can be used to guard hot paths. The varargs variants are kept for convenience.
  */
 public class StateHolder {
 
-    // I probably should use AtomicReference<State> here, but I do not know how to do it.
-    private State state;
+    private static final VarHandle STATE;
+    private static final Map<State, Set<State>> TRANSITIONS = new EnumMap<>(State.class);
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(StateHolder.class, "state", State.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+
+        TRANSITIONS.put(State.INITIALIZED, EnumSet.of(State.LOADING));
+        TRANSITIONS.put(State.LOADING, EnumSet.of(State.POST_LOADING, State.PANICKING));
+        TRANSITIONS.put(State.POST_LOADING, EnumSet.of(State.LOADED, State.UNLOADING, State.PANICKING));
+        TRANSITIONS.put(State.LOADED, EnumSet.of(State.STARTING, State.UNLOADING));
+        TRANSITIONS.put(State.STARTING, EnumSet.of(State.POST_STARTING, State.PANICKING));
+        TRANSITIONS.put(State.POST_STARTING, EnumSet.of(State.STARTED, State.STOPPING, State.PANICKING));
+        TRANSITIONS.put(State.STARTED, EnumSet.of(State.STOPPING));
+        TRANSITIONS.put(State.STOPPING, EnumSet.of(State.LOADED));
+        TRANSITIONS.put(State.UNLOADING, EnumSet.of(State.UNLOADED));
+        TRANSITIONS.put(State.UNLOADED, EnumSet.noneOf(State.class));
+        TRANSITIONS.put(State.PANICKING, EnumSet.of(State.PANICKED));
+        TRANSITIONS.put(State.PANICKED, EnumSet.noneOf(State.class));
+    }
+
+    private volatile State state;
+
+    private final CopyOnWriteArrayList<Registration> listeners = new CopyOnWriteArrayList<>();
 
     public StateHolder(State state) {
         this.state = state;
     }
 
-    public void setStateOrThrow(State newState, State... expectedStates) {
-        synchronized (this) {
-            var match = false;
+    /**
+     * @return true if the state machine allows moving from the one state to the other.
+     */
+    public static boolean isLegalTransition(State from, State to) {
+        return TRANSITIONS.get(from).contains(to);
+    }
 
-            for (State state : expectedStates) {
-                if (this.state == state) {
-                    match = true;
-                    break;
-                }
+    public void setStateOrThrow(State newState, State expectedState) {
+        State current;
+
+        do {
+            current = state;
+
+            if (current != expectedState || !isLegalTransition(current, newState)) {
+                throw new IllegalStateException("Invalid state transition: " + current + " -> " + newState);
             }
+        } while (!STATE.compareAndSet(this, current, newState));
+
+        notifyListeners(current, newState);
+    }
 
-            if (!match) throw new IllegalStateException("Invalid state transition: " + state + " -> " + newState);
+    public void setStateOrThrow(State newState, Set<State> expectedStates) {
+        State current;
 
-            state = newState;
-        }
+        do {
+            current = state;
+
+            if (!expectedStates.contains(current) || !isLegalTransition(current, newState)) {
+                throw new IllegalStateException("Invalid state transition: " + current + " -> " + newState);
+            }
+        } while (!STATE.compareAndSet(this, current, newState));
+
+        notifyListeners(current, newState);
+    }
+
+    public void setStateOrThrow(State newState, State... expectedStates) {
+        setStateOrThrow(newState, toSet(expectedStates));
     }
 
     /**
-     * Please be aware, that until the runnable is executed, the entire holder remains locked to ensure that the state does not change meantime. Try to do it as fast as possible.
+     * The holder is not locked while the runnable is executed, so the state may change in the meantime.
+     * If the runnable must not overlap with a transition, both have to be guarded by a lock of the caller.
      *
      * @param onSuccess      The runnable to execute when the state is correct.
      * @param expectedStates The states that are expected.
      */
     public void requireStates(Runnable onSuccess, State... expectedStates) {
-        synchronized (this) {
-            var match = false;
-
-            for (State state : expectedStates) {
-                if (this.state == state) {
-                    match = true;
-                    break;
-                }
-            }
-
-            if (!match) throw new IllegalStateException("Invalid state: " + state);
-
-            onSuccess.run();
-        }
-
+        requireStatesOrThrow(expectedStates);
+        onSuccess.run();
     }
 
     /**
-     * Please be aware, that until the runnable is executed, the entire holder remains locked to ensure that the state does not change meantime. Try to do it as fast as possible.
+     * The holder is not locked while the runnable is executed, so the state may change in the meantime.
+     * If the runnable must not overlap with a transition, both have to be guarded by a lock of the caller.
      *
      * @param onSuccess      The runnable to execute when the state is correct.
      * @param expectedStates The states that are expected.
      */
     public boolean onStates(Runnable onSuccess, State... expectedStates) {
-        synchronized (this) {
-            var match = false;
-
-            for (State state : expectedStates) {
-                if (this.state == state) {
-                    match = true;
-                    break;
-                }
-            }
+        if (!toSet(expectedStates).contains(state)) return false;
 
-            if (!match) return false;
+        onSuccess.run();
+        return true;
+    }
 
-            onSuccess.run();
-            return true;
-        }
+    public void requireStatesOrThrow(State expectedState) {
+        var current = state;
+        if (current != expectedState) throw new IllegalStateException("Invalid state: " + current);
+    }
 
+    public void requireStatesOrThrow(Set<State> expectedStates) {
+        var current = state;
+        if (!expectedStates.contains(current)) throw new IllegalStateException("Invalid state: " + current);
     }
 
     public void requireStatesOrThrow(State... expectedStates) {
-        synchronized (this) {
-            var match = false;
+        var current = state;
 
-            for (State state : expectedStates) {
-                if (this.state == state) {
-                    match = true;
-                    break;
-                }
-            }
-
-            if (!match) throw new IllegalStateException("Invalid state: " + state);
+        for (State expected : expectedStates) {
+            if (current == expected) return;
         }
+
+        throw new IllegalStateException("Invalid state: " + current);
+    }
+
+    public boolean is(State expectedState) {
+        return state == expectedState;
+    }
+
+    public boolean is(Set<State> expectedStates) {
+        return expectedStates.contains(state);
     }
 
     public State getState() {
         return state;
     }
+
+    /**
+     * Listeners are notified on the common pool, so the thread making the transition is never blocked by them. See {@link #addListener(StateListener, Executor)} for the ordering.
+     */
+    public void addListener(StateListener listener) {
+        addListener(listener, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Each listener is notified one transition at a time, in the order the notifications are enqueued, which happens after the state has been swapped.
+     * A transition made after the previous one has returned is therefore always notified after it, but a transition racing with the notification of the previous one
+     * may be notified first. The old state passed to the listener tells such a case apart.
+     * <p>
+     * A listener with {@link MoreExecutors#directExecutor()} is notified on the thread making the transition, before the transition returns, unless it is still being
+     * notified of another transition on a different thread, in which case that thread notifies it once done.
+     *
+     * @param executor The executor to notify the listener on.
+     */
+    public void addListener(StateListener listener, Executor executor) {
+        listeners.add(new Registration(listener, MoreExecutors.newSequentialExecutor(executor)));
+    }
+
+    public void removeListener(StateListener listener) {
+        listeners.removeIf(registration -> registration.listener == listener);
+    }
+
+    private void notifyListeners(State oldState, State newState) {
+        if (listeners.isEmpty()) return;
+
+        for (Registration registration : listeners) {
+            registration.executor.execute(() -> {
+                try {
+                    registration.listener.onStateChange(oldState, newState);
+                } catch (RuntimeException e) {
+                    // A failing listener must not break the transition, nor the notifications of the following ones.
+                    var thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                }
+            });
+        }
+    }
+
+    private record Registration(StateListener listener, Executor executor) {
+    }
+
+    private static Set<State> toSet(State... states) {
+        var set = EnumSet.noneOf(State.class);
+
+        for (State state : states) {
+            set.add(state);
+        }
+
+        return set;
+    }
 }
@@ -0,0 +1,11 @@
+package cz.oneblock.core.state;
+
+/**
+ * Notified after the state of a {@link StateHolder} has changed.
+ */
+@FunctionalInterface
+public interface StateListener {
+
+    void onStateChange(State oldState, State newState);
+
+}
@@ -0,0 +1,20 @@
+package cz.oneblock.core.util;
+
+import cz.oneblock.core.AbstractDaemon;
+
+/**
+ * Thrown when a daemon could not be constructed. Dependents rethrow it unchanged, so the daemon which actually failed is preserved.
+ */
+public class DaemonLoadingException extends RuntimeException {
+
+    private final Class<? extends AbstractDaemon<?>> daemon;
+
+    public DaemonLoadingException(Class<? extends AbstractDaemon<?>> daemon, Throwable cause) {
+        super("Exception while loading daemon " + daemon.getName(), cause);
+        this.daemon = daemon;
+    }
+
+    public Class<? extends AbstractDaemon<?>> getDaemon() {
+        return daemon;
+    }
+}
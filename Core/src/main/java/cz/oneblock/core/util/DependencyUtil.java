@@ -5,6 +5,7 @@ import cz.oneblock.core.AbstractDaemon;
 import cz.oneblock.core.BootLoader;
 
 import java.util.*;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 /**
@@ -14,19 +15,97 @@ import java.util.stream.Collectors;
 public class DependencyUtil {
 
     public static <B extends BootLoader> Collection<Class<? extends AbstractDaemon<B>>> constructLoadingQueue(Graph<Class<? extends AbstractDaemon<B>>> graph) {
-        List<Class<? extends AbstractDaemon<B>>> sorted = new ArrayList<>();
-        Map<Class<? extends AbstractDaemon<B>>, Mark> marks = new HashMap<>();
+        return sort(graph);
+    }
+
+    /**
+     * Splits the graph into layers, where every node only depends on nodes from the previous layers.
+     * Nodes within one layer are independent of each other, so they can be processed concurrently.
+     *
+     * @param graph The dependency graph, edges point from the dependent node to its dependency.
+     * @return The layers, the first one contains nodes without any dependencies.
+     */
+    public static <N extends Class<?>> List<Set<N>> constructLoadingLayers(Graph<N> graph) {
+        var depths = new HashMap<N, Integer>();
+        var layers = new ArrayList<Set<N>>();
+
+        for (N node : sort(graph)) {
+            var depth = 0;
+
+            for (N dependency : graph.successors(node)) {
+                depth = Math.max(depth, depths.get(dependency) + 1);
+            }
+
+            depths.put(node, depth);
+
+            while (layers.size() <= depth) {
+                layers.add(new LinkedHashSet<>());
+            }
+
+            layers.get(depth).add(node);
+        }
+
+        return layers;
+    }
+
+    /**
+     * Finds the chain of dependencies with the highest total cost.
+     *
+     * @param graph The dependency graph, edges point from the dependent node to its dependency.
+     * @param cost  The cost of a single node.
+     * @return The chain, dependencies first, or an empty list if the graph is empty.
+     */
+    public static <N extends Class<?>> List<N> constructCriticalPath(Graph<N> graph, ToLongFunction<? super N> cost) {
+        var finish = new HashMap<N, Long>();
+        var slowestDependency = new HashMap<N, N>();
+        N last = null;
+
+        for (N node : sort(graph)) {
+            var start = 0L;
+
+            for (N dependency : graph.successors(node)) {
+                if (finish.get(dependency) >= start) {
+                    start = finish.get(dependency);
+                    slowestDependency.put(node, dependency);
+                }
+            }
+
+            finish.put(node, start + cost.applyAsLong(node));
+
+            if (last == null || finish.get(node) > finish.get(last)) {
+                last = node;
+            }
+        }
+
+        var path = new ArrayList<N>();
+
+        for (N node = last; node != null; node = slowestDependency.get(node)) {
+            path.add(node);
+        }
+
+        Collections.reverse(path);
+        return path;
+    }
+
+    public static String describeCycle(Collection<? extends Class<?>> cycle) {
+        final String loop = cycle.stream().map(Class::getSimpleName)
+                .collect(Collectors.joining(" -> "));
+        return "Circular dependency detected: " + loop;
+    }
+
+    private static <N extends Class<?>> List<N> sort(Graph<N> graph) {
+        List<N> sorted = new ArrayList<>();
+        Map<N, Mark> marks = new HashMap<>();
 
-        for (Class<? extends AbstractDaemon<B>> node : graph.nodes()) {
+        for (N node : graph.nodes()) {
             visitNode(graph, node, marks, sorted, new ArrayDeque<>());
         }
 
         return sorted;
     }
 
-    private static <B extends BootLoader> void visitNode(Graph<Class<? extends AbstractDaemon<B>>> dependencyGraph, Class<? extends AbstractDaemon<B>> current,
-                                                         Map<Class<? extends AbstractDaemon<B>>, Mark> visited, List<Class<? extends AbstractDaemon<B>>> sorted,
-                                                         Deque<Class<? extends AbstractDaemon<B>>> currentDependencyScanStack) {
+    private static <N extends Class<?>> void visitNode(Graph<N> dependencyGraph, N current, Map<N, Mark> visited, List<N> sorted,
+                                                       Deque<N> currentDependencyScanStack) {
         Mark mark = visited.getOrDefault(current, Mark.NOT_VISITED);
         if (mark == Mark.VISITED) {
             // Visited this node already, nothing to do.
@@ -37,15 +116,13 @@ public class DependencyUtil {
             // circular dependency, thus we do not have a directed acyclic graph and therefore no
             // topological sort is possible.)
             currentDependencyScanStack.addLast(current);
-            final String loop = currentDependencyScanStack.stream().map(Class::getSimpleName)
-                    .collect(Collectors.joining(" -> "));
-            throw new IllegalStateException("Circular dependency detected: " + loop);
+            throw new IllegalStateException(describeCycle(currentDependencyScanStack));
         }
 
         // Visiting this node. Mark this node as having a visit in progress and scan its edges.
         currentDependencyScanStack.addLast(current);
         visited.put(current, Mark.VISITING);
-        for (Class<? extends AbstractDaemon<B>> edge : dependencyGraph.successors(current)) {
+        for (N edge : dependencyGraph.successors(current)) {
             visitNode(dependencyGraph, edge, visited, sorted, currentDependencyScanStack);
         }
 
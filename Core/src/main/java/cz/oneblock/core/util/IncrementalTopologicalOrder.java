@@ -0,0 +1,194 @@
+package cz.oneblock.core.util;
+
+import com.google.common.graph.MutableGraph;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Keeps a topological order of a dependency graph up to date while edges are being added, so a cycle can be detected without scanning the entire graph.
+ * Edges point from the dependent node to its dependency, and the order puts every dependency before its dependents.
+ * <p>
+ * Based on the algorithm by David J. Pearce and Paul H. J. Kelly, see <a href="https://doi.org/10.1145/1187436.1210590">A dynamic topological sort algorithm for directed acyclic graphs</a>.
+ * When an edge breaks the order, only the nodes positioned between its two ends are visited and reordered.
+ * <p>
+ * This class is not thread-safe, and all changes to the graph must go through it.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class IncrementalTopologicalOrder<N> {
+
+    private final MutableGraph<N> graph;
+    private final Map<N, Integer> order;
+    private int nextIndex;
+
+    /**
+     * @param graph An empty graph.
+     */
+    public IncrementalTopologicalOrder(MutableGraph<N> graph) {
+        if (!graph.nodes().isEmpty()) throw new IllegalArgumentException("The graph must be empty");
+
+        this.graph = graph;
+        this.order = new HashMap<>();
+    }
+
+    public void addNode(N node) {
+        if (graph.addNode(node)) {
+            order.put(node, nextIndex++);
+        }
+    }
+
+    /**
+     * Adds the edge, unless it would create a cycle.
+     *
+     * @param dependent  The node which depends on the other one.
+     * @param dependency The node being depended on.
+     * @return null if the edge has been added, otherwise the cycle it would have created, starting and ending with the dependent.
+     */
+    @Nullable
+    public List<N> tryPutEdge(N dependent, N dependency) {
+        addNode(dependent);
+        addNode(dependency);
+
+        if (graph.hasEdgeConnecting(dependent, dependency)) return null;
+
+        int lowerBound = order.get(dependent);
+        int upperBound = order.get(dependency);
+
+        if (upperBound > lowerBound) {
+            // The dependency is positioned after the dependent, the affected region has to be reordered.
+            var forward = new ArrayList<N>();
+            var parents = new HashMap<N, N>();
+
+            if (collectDependents(dependent, dependency, upperBound, forward, parents)) {
+                var cycle = new ArrayList<N>();
+
+                cycle.add(dependent);
+                for (N node = dependency; !node.equals(dependent); node = parents.get(node)) {
+                    cycle.add(node);
+                }
+                cycle.add(dependent);
+
+                return cycle;
+            }
+
+            var backward = collectDependencies(dependency, lowerBound);
+
+            reorder(backward, forward);
+        }
+
+        graph.putEdge(dependent, dependency);
+
+        return null;
+    }
+
+    /**
+     * Removes all the edges from the node to its dependencies. Removing edges never breaks the order.
+     */
+    public void removeDependencies(N node) {
+        if (!graph.nodes().contains(node)) return;
+
+        for (N dependency : List.copyOf(graph.successors(node))) {
+            graph.removeEdge(node, dependency);
+        }
+    }
+
+    /**
+     * @return The position of the node in the order, dependencies always have a lower position than their dependents.
+     */
+    public int getPosition(N node) {
+        var position = order.get(node);
+
+        if (position == null) throw new IllegalArgumentException("Unknown node " + node);
+
+        return position;
+    }
+
+    /**
+     * Walks the dependents of the start, which are positioned before the upper bound.
+     *
+     * @return true if the target has been reached, in that case the parents lead from it back to the start.
+     */
+    private boolean collectDependents(N start, N target, int upperBound, List<N> visited, Map<N, N> parents) {
+        var stack = new ArrayDeque<N>();
+        var seen = new HashSet<N>();
+
+        stack.push(start);
+        seen.add(start);
+
+        while (!stack.isEmpty()) {
+            var current = stack.pop();
+            visited.add(current);
+
+            for (N next : graph.predecessors(current)) {
+                if (next.equals(target)) {
+                    parents.put(next, current);
+                    return true;
+                }
+
+                if (order.get(next) < upperBound && seen.add(next)) {
+                    parents.put(next, current);
+                    stack.push(next);
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Walks the dependencies of the start, which are positioned after the lower bound.
+     */
+    private List<N> collectDependencies(N start, int lowerBound) {
+        var visited = new ArrayList<N>();
+        var stack = new ArrayDeque<N>();
+        var seen = new HashSet<N>();
+
+        stack.push(start);
+        seen.add(start);
+
+        while (!stack.isEmpty()) {
+            var current = stack.pop();
+            visited.add(current);
+
+            for (N next : graph.successors(current)) {
+                if (order.get(next) > lowerBound && seen.add(next)) {
+                    stack.push(next);
+                }
+            }
+        }
+
+        return visited;
+    }
+
+    /**
+     * Moves the dependencies in front of the dependents, reusing the positions they have occupied.
+     */
+    private void reorder(List<N> dependencies, List<N> dependents) {
+        Comparator<N> byPosition = Comparator.comparingInt(order::get);
+
+        dependencies.sort(byPosition);
+        dependents.sort(byPosition);
+
+        var positions = new int[dependencies.size() + dependents.size()];
+        var i = 0;
+
+        for (N node : dependencies) {
+            positions[i++] = order.get(node);
+        }
+        for (N node : dependents) {
+            positions[i++] = order.get(node);
+        }
+
+        Arrays.sort(positions);
+
+        i = 0;
+
+        for (N node : dependencies) {
+            order.put(node, positions[i++]);
+        }
+        for (N node : dependents) {
+            order.put(node, positions[i++]);
+        }
+    }
+
+}
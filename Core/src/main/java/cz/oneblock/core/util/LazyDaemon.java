@@ -0,0 +1,17 @@
+package cz.oneblock.core.util;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a daemon, which is not loaded during {@link cz.oneblock.core.SystemDaemon#load()}.
+ * Instead, it is constructed, post-loaded and started when it is first obtained as a dependency, or looked up by {@link cz.oneblock.core.SystemDaemon#getDaemon(Class)}.
+ * <p>
+ * A lazy daemon obtained by another daemon while loading is loaded together with it.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface LazyDaemon {
+}
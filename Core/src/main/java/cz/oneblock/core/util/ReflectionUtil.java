@@ -5,6 +5,8 @@ import sun.misc.Unsafe;
 
 import javax.annotation.Nullable;
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
@@ -51,4 +53,19 @@ public class ReflectionUtil {
         return fields;
     }
 
+    /**
+     * @return The methods declared by the class and its superclasses, including overridden ones, subclasses first.
+     */
+    public static Collection<Method> getAllMethods(Class<?> clazz) {
+        var methods = new ArrayList<Method>();
+        var current = clazz;
+
+        while (current != null && current != Object.class) {
+            methods.addAll(Arrays.asList(current.getDeclaredMethods()));
+            current = current.getSuperclass();
+        }
+
+        return methods;
+    }
+
 }
@@ -1,11 +1,18 @@
 package cz.oneblock.core;
 
+import cz.oneblock.core.configuration.ConfigDiff;
+import cz.oneblock.core.configuration.ConfigSnapshot;
 import cz.oneblock.core.configuration.ConfigurateConfiguration;
 import cz.oneblock.core.configuration.ConfigurateSection;
 import cz.oneblock.core.configuration.ConfigurationDaemon;
+import cz.oneblock.core.configuration.ConfigurationFormat;
 import cz.oneblock.core.configuration.CorruptedConfigurationException;
+import cz.oneblock.core.configuration.LazySections;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
@@ -14,6 +21,7 @@ public abstract class ProjectDaemon<B extends BootLoader> extends AbstractDaemon
 
     protected final Lock configurationLock;
     private final ConfigurateConfiguration daemonConfiguration;
+    private final List<ConfigSnapshot<?>> snapshots = new CopyOnWriteArrayList<>();
 
     public ProjectDaemon(SystemDaemon system) {
         super(system);
@@ -31,15 +39,74 @@ public abstract class ProjectDaemon<B extends BootLoader> extends AbstractDaemon
         return daemonConfiguration.getConfiguration();
     }
 
+    /**
+     * @return The top-level sections of the configuration. With {@link #lazyConfiguration()}, only the sections which are accessed are decoded.
+     */
+    protected LazySections getConfigurationSections() {
+        return daemonConfiguration.getSections();
+    }
+
     protected void loadConfiguration(ConfigurateSection configuration) {
     }
 
+    /**
+     * Called after a reload instead of {@link #loadConfiguration(ConfigurateSection)}, with the paths which have changed,
+     * so only the state derived from them has to be rebuilt. By default, everything is loaded again.
+     */
+    protected void loadConfiguration(ConfigurateSection configuration, ConfigDiff diff) {
+        loadConfiguration(configuration);
+    }
+
+    /**
+     * Binds the configuration to an immutable object, usually a record annotated with {@code @ConfigSerializable}.
+     * The snapshot is bound again after every reload and every {@link #configurationAction(Consumer) edit}, hot paths should read it instead of the section.
+     */
+    protected <T> ConfigSnapshot<T> bindConfiguration(Class<T> type) {
+        try {
+            var snapshot = new ConfigSnapshot<>(type);
+            snapshot.bind(getConfiguration());
+            snapshots.add(snapshot);
+            return snapshot;
+        } catch (CorruptedConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Maps all the snapshots before publishing any of them, so a configuration failing to map leaves all of them untouched.
+     */
+    private void rebindSnapshots() throws CorruptedConfigurationException {
+        var bound = List.copyOf(snapshots);
+
+        if (bound.isEmpty()) return;
+
+        var section = getConfiguration();
+        var values = new ArrayList<>(bound.size());
+
+        for (var snapshot : bound) {
+            values.add(snapshot.map(section));
+        }
+
+        for (int i = 0; i < bound.size(); i++) {
+            publish(bound.get(i), values.get(i));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void publish(ConfigSnapshot<T> snapshot, Object value) {
+        snapshot.publish((T) value);
+    }
+
+    /**
+     * Edits a copy of the configuration, which replaces the current one once the editor returns. Readers keep seeing the previous version until then.
+     * The file is written shortly after, together with any other edits made in the meantime.
+     */
     protected void configurationAction(Consumer<ConfigurateSection> editor) {
         configurationLock.lock();
         try {
-            editor.accept(getConfiguration());
-            daemonConfiguration.save();
-        } catch (IOException e) {
+            daemonConfiguration.edit(editor);
+            rebindSnapshots();
+        } catch (CorruptedConfigurationException e) {
             throw new RuntimeException(e);
         } finally {
             configurationLock.unlock();
@@ -50,8 +117,11 @@ public abstract class ProjectDaemon<B extends BootLoader> extends AbstractDaemon
         if (allowReload()) {
             configurationLock.lock();
             try {
+                var previous = getConfiguration();
+
                 daemonConfiguration.load(repairConfiguration());
-                loadConfiguration(getConfiguration());
+                rebindSnapshots();
+                loadConfiguration(getConfiguration(), ConfigDiff.between(previous, getConfiguration()));
             } catch (CorruptedConfigurationException | IOException e) {
                 throw new RuntimeException(e);
             } finally {
@@ -62,6 +132,36 @@ public abstract class ProjectDaemon<B extends BootLoader> extends AbstractDaemon
         }
     }
 
+    /**
+     * Called by the {@link ConfigurationDaemon}, when the file of the configuration has been changed from outside.
+     * Does nothing, unless reloading is allowed.
+     *
+     * @return The changes, or null if nothing has been reloaded.
+     */
+    public final ConfigDiff reloadChangedConfiguration() {
+        if (!allowReload()) return null;
+
+        configurationLock.lock();
+        try {
+            var previous = getConfiguration();
+
+            if (!daemonConfiguration.reload(repairConfiguration())) return null;
+
+            var diff = ConfigDiff.between(previous, getConfiguration());
+
+            if (!diff.isEmpty()) {
+                rebindSnapshots();
+                loadConfiguration(getConfiguration(), diff);
+            }
+
+            return diff;
+        } catch (CorruptedConfigurationException | IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            configurationLock.unlock();
+        }
+    }
+
     public boolean useConfiguration() {
         return false;
     }
@@ -74,6 +174,21 @@ public abstract class ProjectDaemon<B extends BootLoader> extends AbstractDaemon
         return false;
     }
 
+    /**
+     * The format the configuration file is created in. An existing file in another format is still used, so the file can be converted by hand.
+     */
+    public ConfigurationFormat configurationFormat() {
+        return ConfigurationFormat.HOCON;
+    }
+
+    /**
+     * Whether the configuration is decoded section by section, as it is accessed through {@link #getConfigurationSections()}.
+     * Meant for large generated files, which are not repaired. {@link #getConfiguration()} and edits still decode all of it.
+     */
+    public boolean lazyConfiguration() {
+        return false;
+    }
+
     public boolean useLanguage() {
         return false;
     }
@@ -0,0 +1,269 @@
+package cz.oneblock.core.configuration;
+
+import org.spongepowered.configurate.CommentedConfigurationNode;
+import org.spongepowered.configurate.ConfigurateException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact tagged encoding of the tree, for generated configurations which are not edited by hand. Comments are kept.
+ * The same encoding is used by the snapshots of the {@link ConfigCache}, which the {@link LazySections} index.
+ */
+final class BinaryConfigurationFormat implements ConfigurationFormat {
+
+    private static final int MAGIC = 0x44434642;
+    private static final int VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte MAP = 1;
+    private static final byte LIST = 2;
+    private static final byte STRING = 3;
+    private static final byte INTEGER = 4;
+    private static final byte LONG = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte FLOAT = 7;
+    private static final byte BOOLEAN = 8;
+
+    @Override
+    public String getExtension() {
+        return "bin";
+    }
+
+    @Override
+    public CommentedConfigurationNode parse(byte[] content) throws ConfigurateException {
+        var buffer = ByteBuffer.wrap(content);
+
+        try {
+            if (!readHeader(buffer)) throw new ConfigurateException("Not a binary configuration");
+
+            var root = CommentedConfigurationNode.root();
+            decode(buffer, root);
+
+            return root;
+        } catch (RuntimeException e) {
+            throw new ConfigurateException("Damaged binary configuration: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public byte[] serialize(CommentedConfigurationNode node) throws ConfigurateException {
+        var bytes = new ByteArrayOutputStream();
+
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            if (!encode(out, node)) throw new ConfigurateException("The configuration contains values, which cannot be stored in the binary format");
+        } catch (ConfigurateException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new ConfigurateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the header of a binary configuration.
+     *
+     * @return Whether the header is valid, the buffer is then positioned at the root node.
+     */
+    static boolean readHeader(ByteBuffer buffer) {
+        return buffer.remaining() >= 2 * Integer.BYTES && buffer.getInt() == MAGIC && buffer.getInt() == VERSION;
+    }
+
+    /**
+     * @return False, if the tree contains a value which cannot be encoded.
+     */
+    static boolean encode(DataOutputStream out, CommentedConfigurationNode node) throws IOException {
+        var comment = node.comment();
+
+        out.writeBoolean(comment != null);
+        if (comment != null) writeString(out, comment);
+
+        if (node.isMap()) {
+            Map<Object, CommentedConfigurationNode> children = node.childrenMap();
+
+            out.writeByte(MAP);
+            out.writeInt(children.size());
+
+            for (var entry : children.entrySet()) {
+                if (!(entry.getKey() instanceof String key)) return false;
+
+                writeString(out, key);
+                if (!encode(out, entry.getValue())) return false;
+            }
+
+            return true;
+        }
+
+        if (node.isList()) {
+            List<CommentedConfigurationNode> children = node.childrenList();
+
+            out.writeByte(LIST);
+            out.writeInt(children.size());
+
+            for (var child : children) {
+                if (!encode(out, child)) return false;
+            }
+
+            return true;
+        }
+
+        var value = node.rawScalar();
+
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String string) {
+            out.writeByte(STRING);
+            writeString(out, string);
+        } else if (value instanceof Integer integer) {
+            out.writeByte(INTEGER);
+            out.writeInt(integer);
+        } else if (value instanceof Long longValue) {
+            out.writeByte(LONG);
+            out.writeLong(longValue);
+        } else if (value instanceof Double doubleValue) {
+            out.writeByte(DOUBLE);
+            out.writeDouble(doubleValue);
+        } else if (value instanceof Float floatValue) {
+            out.writeByte(FLOAT);
+            out.writeFloat(floatValue);
+        } else if (value instanceof Boolean booleanValue) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean(booleanValue);
+        } else {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the node at the position of the buffer into the given one, and moves the position past it.
+     *
+     * @throws RuntimeException If the snapshot is damaged.
+     */
+    static void decode(ByteBuffer buffer, CommentedConfigurationNode node) {
+        if (buffer.get() != 0) node.comment(readString(buffer));
+
+        var type = buffer.get();
+
+        switch (type) {
+            case NULL -> node.raw(null);
+            case MAP -> {
+                var size = buffer.getInt();
+
+                if (size == 0) node.raw(Map.of());
+
+                for (int i = 0; i < size; i++) {
+                    decode(buffer, node.node(readString(buffer)));
+                }
+            }
+            case LIST -> {
+                var size = buffer.getInt();
+
+                if (size == 0) node.raw(List.of());
+
+                for (int i = 0; i < size; i++) {
+                    decode(buffer, node.appendListNode());
+                }
+            }
+            case STRING -> node.raw(readString(buffer));
+            case INTEGER -> node.raw(buffer.getInt());
+            case LONG -> node.raw(buffer.getLong());
+            case DOUBLE -> node.raw(buffer.getDouble());
+            case FLOAT -> node.raw(buffer.getFloat());
+            case BOOLEAN -> node.raw(buffer.get() != 0);
+            default -> throw new IllegalArgumentException("Unknown node type " + type);
+        }
+    }
+
+    /**
+     * Moves the position of the buffer past the node, without reading it.
+     */
+    static void skip(ByteBuffer buffer) {
+        if (buffer.get() != 0) skipString(buffer);
+
+        var type = buffer.get();
+
+        switch (type) {
+            case NULL -> {
+            }
+            case MAP -> {
+                var size = buffer.getInt();
+
+                for (int i = 0; i < size; i++) {
+                    skipString(buffer);
+                    skip(buffer);
+                }
+            }
+            case LIST -> {
+                var size = buffer.getInt();
+
+                for (int i = 0; i < size; i++) {
+                    skip(buffer);
+                }
+            }
+            case STRING -> skipString(buffer);
+            case INTEGER, FLOAT -> buffer.position(buffer.position() + Integer.BYTES);
+            case LONG, DOUBLE -> buffer.position(buffer.position() + Long.BYTES);
+            case BOOLEAN -> buffer.get();
+            default -> throw new IllegalArgumentException("Unknown node type " + type);
+        }
+    }
+
+    /**
+     * Reads the header of a map node.
+     *
+     * @return The number of entries, or -1 if the node is not a map.
+     */
+    static int readMapHeader(ByteBuffer buffer) {
+        if (buffer.get() != 0) skipString(buffer);
+
+        if (buffer.get() != MAP) return -1;
+
+        // Every entry takes at least a byte, so a larger size cannot be right, and must not be allocated for.
+        return checkLength(buffer, buffer.getInt());
+    }
+
+    static String readKey(ByteBuffer buffer) {
+        return readString(buffer);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        var length = checkLength(buffer, buffer.getInt());
+        buffer.position(buffer.position() + length);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        var bytes = string.getBytes(StandardCharsets.UTF_8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var bytes = new byte[checkLength(buffer, buffer.getInt())];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks a stored length before anything is allocated for it, so a damaged file fails like any other damage, instead of exhausting the heap.
+     */
+    private static int checkLength(ByteBuffer buffer, int length) {
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid length " + length + " at " + buffer.position() + ", " + buffer.remaining() + " bytes remaining");
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,125 @@
+package cz.oneblock.core.configuration;
+
+import com.google.common.hash.HashCode;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Keeps the parsed trees of the configurations in a compact binary form, so an unchanged file does not have to be parsed again on the next boot.
+ * A snapshot is only used when the size, the modification time and the hash of the content it has been taken from all match, anything else is a miss,
+ * and the file is parsed as usual.
+ * <p>
+ * Snapshots are read onto the heap rather than mapped, so a snapshot in use never keeps its file from being replaced. The trees are encoded like the {@link ConfigurationFormat#BINARY binary format}. Trees containing values, which cannot be encoded, are not cached.
+ */
+final class ConfigCache {
+
+    private static final int MAGIC = 0x44434647;
+    private static final int VERSION = 1;
+
+
+    private final File folder;
+
+    ConfigCache(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * @return The tree, or null if there is no snapshot matching the content.
+     */
+    @Nullable
+    CommentedConfigurationNode load(String name, long size, long modified, HashCode hash) {
+        var buffer = read(name, size, modified, hash);
+
+        if (buffer == null) return null;
+
+        try {
+            var root = CommentedConfigurationNode.root();
+            BinaryConfigurationFormat.decode(buffer, root);
+
+            return root;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The snapshot positioned at the root node, or null if there is no snapshot matching the content.
+     */
+    @Nullable
+    ByteBuffer read(String name, long size, long modified, HashCode hash) {
+        var file = new File(folder, name + ".bin");
+
+        if (!file.isFile()) return null;
+
+        try {
+            var buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != size || buffer.getLong() != modified) return null;
+
+            var expected = hash.asBytes();
+            var length = buffer.getInt();
+
+            // Checked before allocating, a damaged length must not take the heap down.
+            if (length != expected.length || length > buffer.remaining()) return null;
+
+            var actual = new byte[length];
+            buffer.get(actual);
+
+            if (!Arrays.equals(expected, actual)) return null;
+
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            // A damaged snapshot is a miss, it is replaced after parsing.
+            return null;
+        }
+    }
+
+    /**
+     * Stores the tree, which must not be modified concurrently. Failures are ignored, the file is parsed again next time.
+     */
+    void store(String name, long size, long modified, HashCode hash, CommentedConfigurationNode node) {
+        var bytes = new ByteArrayOutputStream();
+
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(size);
+            out.writeLong(modified);
+
+            var hashBytes = hash.asBytes();
+            out.writeInt(hashBytes.length);
+            out.write(hashBytes);
+
+            if (!BinaryConfigurationFormat.encode(out, node)) return;
+        } catch (IOException e) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(folder.toPath());
+
+            var target = new File(folder, name + ".bin").toPath();
+            var temporary = target.resolveSibling(name + ".bin.tmp");
+
+            Files.write(temporary, bytes.toByteArray());
+
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException ignored) {
+            // Only costs a parse on the next boot.
+        }
+    }
+}
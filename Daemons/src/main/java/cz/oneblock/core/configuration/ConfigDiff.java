@@ -0,0 +1,68 @@
+package cz.oneblock.core.configuration;
+
+import org.spongepowered.configurate.ConfigurationNode;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The paths which differ between two versions of a configuration, handed to {@link cz.oneblock.core.ProjectDaemon#loadConfiguration(ConfigurateSection, ConfigDiff)}.
+ * Changed values are reported by their own paths. A section, which has been added or removed as a whole, or replaced by a value, is reported by its path only.
+ */
+public final class ConfigDiff {
+
+    private final Set<ConfigPath> changed;
+
+    private ConfigDiff(Set<ConfigPath> changed) {
+        this.changed = Collections.unmodifiableSet(changed);
+    }
+
+    public static ConfigDiff between(ConfigurateSection previous, ConfigurateSection current) {
+        var changed = new LinkedHashSet<ConfigPath>();
+        compare(previous.configuration(), current.configuration(), ConfigPath.ROOT, changed);
+        return new ConfigDiff(changed);
+    }
+
+    private static void compare(ConfigurationNode previous, ConfigurationNode current, ConfigPath path, Set<ConfigPath> changed) {
+        if (previous.isMap() && current.isMap()) {
+            var keys = new LinkedHashSet<Object>(previous.childrenMap().keySet());
+            keys.addAll(current.childrenMap().keySet());
+
+            for (var key : keys) {
+                compare(previous.node(key), current.node(key), path.resolve(key), changed);
+            }
+        } else if (!Objects.equals(previous.raw(), current.raw())) {
+            changed.add(path);
+        }
+    }
+
+    public Set<ConfigPath> getChanged() {
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return changed.isEmpty();
+    }
+
+    public boolean affects(String path) {
+        return affects(ConfigPath.of(path));
+    }
+
+    /**
+     * @return Whether anything has changed at the path, under it, or whether one of its parents has been replaced.
+     */
+    public boolean affects(ConfigPath path) {
+        for (var changedPath : changed) {
+            if (changedPath.startsWith(path) || path.startsWith(changedPath)) return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return changed.toString();
+    }
+}
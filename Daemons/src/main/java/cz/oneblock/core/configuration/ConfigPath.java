@@ -0,0 +1,100 @@
+package cz.oneblock.core.configuration;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.google.common.base.Splitter;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A dot separated path into a {@link ConfigurateSection}, split once. Underscores are read as dashes, so {@code max_players} and {@code max-players} are the same key.
+ * <p>
+ * Paths used on hot paths should be kept in constants. String paths passed to the section are compiled through a bounded cache, so they are not split on every read either.
+ */
+public final class ConfigPath {
+
+    static final ConfigPath ROOT = new ConfigPath("", new Object[0]);
+
+    private static final Splitter SPLITTER = Splitter.on('.');
+    private static final LoadingCache<String, ConfigPath> CACHE = Caffeine.newBuilder()
+            .maximumSize(4096)
+            .build(ConfigPath::compile);
+
+    private final String path;
+    private final Object[] nodes;
+
+    private ConfigPath(String path, Object[] nodes) {
+        this.path = path;
+        this.nodes = nodes;
+    }
+
+    /**
+     * @return The compiled path, shared with everybody using the same string while it stays in the cache.
+     */
+    public static ConfigPath of(String path) {
+        return CACHE.get(path);
+    }
+
+    private static ConfigPath compile(String path) {
+        return new ConfigPath(path, SPLITTER.splitToList(path.replace('_', '-')).toArray());
+    }
+
+    /**
+     * @return The path of the child, compiled without going through the cache.
+     */
+    public ConfigPath child(String key) {
+        var child = compile(key);
+        var joined = Arrays.copyOf(nodes, nodes.length + child.nodes.length);
+
+        System.arraycopy(child.nodes, 0, joined, nodes.length, child.nodes.length);
+
+        return new ConfigPath(path + "." + key, joined);
+    }
+
+    /**
+     * @return The path of the child, with the key taken as it is, as found in the configuration.
+     */
+    ConfigPath resolve(Object key) {
+        var joined = Arrays.copyOf(nodes, nodes.length + 1);
+        joined[nodes.length] = key;
+
+        return new ConfigPath(nodes.length == 0 ? key.toString() : path + "." + key, joined);
+    }
+
+    /**
+     * @return Whether the other path is this path, or one of its parents.
+     */
+    public boolean startsWith(ConfigPath other) {
+        if (other.nodes.length > nodes.length) return false;
+        return Arrays.equals(nodes, 0, other.nodes.length, other.nodes, 0, other.nodes.length);
+    }
+
+    /**
+     * The returned array is shared, and must not be modified.
+     */
+    Object[] nodes() {
+        return nodes;
+    }
+
+    public List<Object> elements() {
+        return List.of(nodes);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ConfigPath other)) return false;
+        return Arrays.equals(nodes, other.nodes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(nodes);
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -0,0 +1,62 @@
+package cz.oneblock.core.configuration;
+
+import org.spongepowered.configurate.objectmapping.ObjectMapper;
+import org.spongepowered.configurate.serialize.SerializationException;
+
+/**
+ * The configuration of a daemon bound to an immutable object, usually a record, by the Configurate {@link ObjectMapper}.
+ * The object is bound once per load, reading it is a single volatile load, and it is replaced as a whole, so readers never see a half-loaded configuration.
+ *
+ * @see cz.oneblock.core.ProjectDaemon#bindConfiguration(Class)
+ */
+public final class ConfigSnapshot<T> {
+
+    private final Class<T> type;
+    private final ObjectMapper<T> mapper;
+    private volatile T value;
+
+    /**
+     * @throws CorruptedConfigurationException If the type cannot be mapped.
+     */
+    public ConfigSnapshot(Class<T> type) throws CorruptedConfigurationException {
+        this.type = type;
+
+        try {
+            this.mapper = ObjectMapper.factory().get(type);
+        } catch (SerializationException e) {
+            throw new CorruptedConfigurationException(e);
+        }
+    }
+
+    public T get() {
+        return value;
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Maps the section without publishing the result, so several snapshots can be bound before any of them is replaced.
+     *
+     * @throws CorruptedConfigurationException If the section does not match the type.
+     */
+    public T map(ConfigurateSection section) throws CorruptedConfigurationException {
+        try {
+            return mapper.load(section.configuration());
+        } catch (SerializationException e) {
+            throw new CorruptedConfigurationException(e);
+        }
+    }
+
+    public void publish(T value) {
+        this.value = value;
+    }
+
+    /**
+     * Maps the section and publishes the result.
+     */
+    public void bind(ConfigurateSection section) throws CorruptedConfigurationException {
+        publish(map(section));
+    }
+}
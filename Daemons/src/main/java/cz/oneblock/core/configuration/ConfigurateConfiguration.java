@@ -1,80 +1,385 @@
 package cz.oneblock.core.configuration;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import cz.oneblock.core.BootLoader;
+import org.jetbrains.annotations.Nullable;
 import org.spongepowered.configurate.CommentedConfigurationNode;
 import org.spongepowered.configurate.ConfigurateException;
-import org.spongepowered.configurate.hocon.HoconConfigurationLoader;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
+/**
+ * The configuration is copy-on-write. Readers get the published version without locking, and it never changes under them.
+ * Edits are applied to a copy, which replaces the published version once the edit is done.
+ * <p>
+ * Edits only mark the configuration as dirty, it is written behind by the {@link ConfigurationDaemon}, so a burst of edits results in a single write.
+ * The file is only rewritten when its content changes, through a temporary file renamed over it.
+ * <p>
+ * A lazy configuration with an up-to-date snapshot in the {@link ConfigCache} is not decoded when loaded. Only its {@link LazySections sections} are indexed,
+ * and the whole tree is decoded the first time it is needed. Lazy configurations are not repaired, as that would need the whole tree.
+ */
 public class ConfigurateConfiguration {
 
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
     private final CommentedConfigurationNode reference;
-    private final HoconConfigurationLoader loader;
     private final File file;
-    private ConfigurateSection configuration;
+    private final ConfigurationFormat format;
+    private final ConfigCache cache;
+    private final boolean lazy;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock saveLock = new ReentrantLock();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final AtomicReference<Version> version = new AtomicReference<>(new Version(null, null));
+    private volatile HashCode savedHash;
 
     public ConfigurateConfiguration(File dataFolder, String name, BootLoader bootLoader) {
         this(dataFolder, name, "configuration/", bootLoader);
     }
 
     public ConfigurateConfiguration(File dataFolder, String name, String defaultResourceFolder, BootLoader bootLoader) {
-        file = new File(dataFolder, name);
-
-        loader = HoconConfigurationLoader.builder()
-                .file(file)
-                .emitComments(true)
-                .prettyPrinting(true)
-                .emitJsonCompatible(false)
-                .build();
-
-        var referenceLoader = HoconConfigurationLoader.builder()
-                .emitComments(true)
-                .prettyPrinting(true)
-                .source(() -> new BufferedReader(new InputStreamReader(bootLoader.getResourceAsStream(defaultResourceFolder + name))))
-                .emitJsonCompatible(false)
-                .build();
+        this(new File(dataFolder, name), ConfigurationFormat.ofFileName(name), parseReference(bootLoader, defaultResourceFolder + name, ConfigurationFormat.ofFileName(name), null), null, false);
+    }
+
+    /**
+     * @param format    The format of the file.
+     * @param reference The parsed reference, which is merged into the configuration when it is repaired.
+     * @param cache     The cache of parsed trees, or null to always parse the file.
+     * @param lazy      Whether to only index the sections, when the snapshot in the cache is up to date.
+     */
+    ConfigurateConfiguration(File file, ConfigurationFormat format, CommentedConfigurationNode reference, @Nullable ConfigCache cache, boolean lazy) {
+        this.file = file;
+        this.format = format;
+        this.reference = reference;
+        this.cache = cache;
+        this.lazy = lazy;
+    }
+
+    /**
+     * @param format The format of the reference, which may differ from the format of the file.
+     * @param cache  The cache of parsed trees, or null to always parse the reference.
+     */
+    static CommentedConfigurationNode parseReference(BootLoader bootLoader, String resource, ConfigurationFormat format, @Nullable ConfigCache cache) {
+        try (var stream = bootLoader.getResourceAsStream(resource)) {
+            if (stream == null) throw new IOException("Missing reference configuration " + resource);
+
+            var content = stream.readAllBytes();
+
+            // Resources have no modification time, the content is compared by the hash.
+            return parse(content, "reference-" + resource.replace('/', '-'), 0, format, cache).node();
+        } catch (IOException | CorruptedConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads and parses the file, without loading it into any configuration.
+     *
+     * @param cache The cache of parsed trees, or null to always parse the file.
+     */
+    static Parsed read(File file, ConfigurationFormat format, @Nullable ConfigCache cache) throws CorruptedConfigurationException, IOException {
+        var modified = Files.getLastModifiedTime(file.toPath()).toMillis();
+        var content = Files.readAllBytes(file.toPath());
+
+        return parse(content, file.getName(), modified, format, cache);
+    }
+
+    private static Parsed parse(byte[] content, String name, long modified, ConfigurationFormat format, @Nullable ConfigCache cache) throws CorruptedConfigurationException {
+        var hash = HASH.hashBytes(content);
+
+        // A new file, which is about to be filled in from the reference.
+        if (content.length == 0) return new Parsed(hash, CommentedConfigurationNode.root());
+
+        // The binary format decodes as fast as its snapshot would.
+        if (format == ConfigurationFormat.BINARY) cache = null;
+
+        if (cache != null) {
+            var cached = cache.load(name, content.length, modified, hash);
+            if (cached != null) return new Parsed(hash, cached);
+        }
 
         try {
-            reference = referenceLoader.load();
+            var node = format.parse(content);
+
+            if (cache != null) cache.store(name, content.length, modified, hash, node);
+
+            return new Parsed(hash, node);
         } catch (ConfigurateException e) {
-            throw new RuntimeException(e);
+            throw new CorruptedConfigurationException("Failed to parse configuration " + name + ": " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Edits which have not been saved yet are saved first, so reloading does not lose them.
+     */
     public boolean load(boolean repair) throws CorruptedConfigurationException, IOException {
+        return load(repair, null);
+    }
+
+    /**
+     * @param preloaded The file parsed beforehand, or null to read it now.
+     */
+    boolean load(boolean repair, Parsed preloaded) throws CorruptedConfigurationException, IOException {
+        writeLock.lock();
+        try {
+            flush();
+
+            saveLock.lock();
+            try {
+                return loadLocked(repair, preloaded);
+            } finally {
+                saveLock.unlock();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Loads the file again, if its content differs from what has been loaded or saved last, so writes of the configuration itself are ignored.
+     * Unlike {@link #load(boolean)}, edits which have not been saved yet are discarded, the file wins.
+     *
+     * @return Whether the file has been changed, and loaded.
+     */
+    public boolean reload(boolean repair) throws CorruptedConfigurationException, IOException {
+        writeLock.lock();
+        saveLock.lock();
+        try {
+            if (!file.exists() || HASH.hashBytes(Files.readAllBytes(file.toPath())).equals(savedHash)) return false;
+
+            dirty.set(false);
+            loadLocked(repair, null);
+
+            return true;
+        } finally {
+            saveLock.unlock();
+            writeLock.unlock();
+        }
+    }
+
+    private boolean loadLocked(boolean repair, Parsed preloaded) throws CorruptedConfigurationException, IOException {
         var newlyCreated = false;
 
         if (!file.exists()) {
             newlyCreated = true;
+            preloaded = null;
             if (!file.createNewFile()) throw new IOException("Could not create configuration file!");
         }
 
-        try {
-            if (repair || newlyCreated) {
-                configuration = new ConfigurateSection(loader.load()
-                        .mergeFrom(reference));
-            } else {
-                configuration = new ConfigurateSection(loader.load());
-            }
+        if (!newlyCreated && lazy && (format == ConfigurationFormat.BINARY ? loadIndexedFile() : cache != null && loadIndexed())) return false;
 
-        } catch (ConfigurateException e) {
-            throw new CorruptedConfigurationException(e);
+        var parsed = preloaded != null ? preloaded : read(file, format, cache);
+
+        savedHash = parsed.hash();
+
+        if (repair || newlyCreated) {
+            publish(new ConfigurateSection(parsed.node()
+                    .mergeFrom(reference)));
+        } else {
+            publish(new ConfigurateSection(parsed.node()));
         }
 
-        save();
+        if (newlyCreated) {
+            // Written right away, the daemon will not start until the file has been filled in.
+            dirty.set(false);
+            save();
+        } else if (repair) {
+            // The merged reference only causes a write, if it added something.
+            dirty.set(true);
+        }
 
         return newlyCreated;
     }
 
+    /**
+     * Indexes the sections of the snapshot, if it is up to date.
+     *
+     * @return Whether the snapshot has been used.
+     */
+    private boolean loadIndexed() throws IOException {
+        var modified = Files.getLastModifiedTime(file.toPath()).toMillis();
+        var content = Files.readAllBytes(file.toPath());
+        var hash = HASH.hashBytes(content);
+        var buffer = cache.read(file.getName(), content.length, modified, hash);
+
+        if (buffer == null) return false;
+
+        var sections = LazySections.index(buffer);
+
+        if (sections == null) return false;
+
+        savedHash = hash;
+        version.set(new Version(null, sections));
+
+        return true;
+    }
+
+    /**
+     * Indexes the sections of a binary file directly, without decoding them.
+     * The content is read onto the heap rather than mapped, as a mapping would keep the file from being replaced by the next save on some platforms.
+     *
+     * @return Whether the file has been indexed.
+     */
+    private boolean loadIndexedFile() throws IOException {
+        var content = Files.readAllBytes(file.toPath());
+        var hash = HASH.hashBytes(content);
+        var root = ByteBuffer.wrap(content);
+
+        if (!BinaryConfigurationFormat.readHeader(root)) return false;
+
+        var sections = LazySections.index(root);
+
+        if (sections == null) return false;
+
+        savedHash = hash;
+        version.set(new Version(null, sections));
+
+        return true;
+    }
+
+    private void publish(ConfigurateSection configuration) {
+        version.set(new Version(configuration, null));
+    }
+
+    /**
+     * Writes the published version, unless the file already has the same content.
+     */
     public void save() throws IOException {
-        loader.save(configuration.configuration());
+        saveLock.lock();
+        try {
+            var published = version.get().configuration();
+
+            // Never decoded, so never edited either.
+            if (published == null) return;
+
+            var content = format.serialize(published.configuration());
+            var hash = HASH.hashBytes(content);
+
+            if (hash.equals(savedHash)) return;
+
+            var target = file.toPath();
+            var temporary = target.resolveSibling(file.getName() + ".tmp");
+
+            Files.write(temporary, content);
+
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            savedHash = hash;
+        } finally {
+            saveLock.unlock();
+        }
+    }
+
+    /**
+     * Saves the configuration, if it has been edited since the last save.
+     *
+     * @return Whether there was anything to save.
+     */
+    public boolean flush() throws IOException {
+        if (!dirty.getAndSet(false)) return false;
+
+        try {
+            save();
+        } catch (IOException | RuntimeException e) {
+            dirty.set(true);
+            throw e;
+        }
+
+        return true;
+    }
+
+    public boolean isDirty() {
+        return dirty.get();
+    }
+
+    /**
+     * Applies the editor to a copy of the configuration and publishes the copy. Edits are serialized, readers are never blocked.
+     * If the editor throws, nothing is published. The copy is saved later by the {@link ConfigurationDaemon}, or by {@link #flush()}.
+     */
+    public void edit(Consumer<ConfigurateSection> editor) {
+        writeLock.lock();
+        try {
+            var copy = new ConfigurateSection(getConfiguration().configuration().copy());
+
+            editor.accept(copy);
+
+            publish(copy);
+            dirty.set(true);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public File getFile() {
+        return file;
     }
 
+    public ConfigurationFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return The published version of the configuration. It is not affected by later edits or reloads, which publish a new version instead.
+     */
     public ConfigurateSection getConfiguration() {
-        return configuration;
+        var current = version.get();
+
+        if (current.configuration() != null) return current.configuration();
+
+        writeLock.lock();
+        try {
+            // Decoded once, the edits and reloads waiting for the lock publish their own versions afterwards.
+            current = version.get();
+
+            if (current.configuration() != null) return current.configuration();
+
+            var configuration = new ConfigurateSection(current.sections().materialize());
+            version.set(new Version(configuration, current.sections()));
+
+            return configuration;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return The top-level sections of the published version, decoded on access if the configuration is lazy.
+     */
+    public LazySections getSections() {
+        var current = version.get();
+
+        if (current.sections() != null) return current.sections();
+
+        var sections = LazySections.of(current.configuration().configuration());
+        version.compareAndSet(current, new Version(current.configuration(), sections));
+
+        return sections;
+    }
+
+    /**
+     * A published version of the configuration, either of which may be missing until it is needed, but not both.
+     */
+    private record Version(@Nullable ConfigurateSection configuration, @Nullable LazySections sections) {
+    }
+
+    /**
+     * A parsed file, with the hash of the content it has been parsed from.
+     */
+    record Parsed(HashCode hash, CommentedConfigurationNode node) {
     }
 }
@@ -1,6 +1,6 @@
 package cz.oneblock.core.configuration;
 
-import com.google.common.base.Splitter;
+import com.google.common.collect.Collections2;
 import cz.oneblock.core.util.ThrowableFunction;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -8,48 +8,91 @@ import org.spongepowered.configurate.CommentedConfigurationNode;
 import org.spongepowered.configurate.serialize.SerializationException;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
+import java.util.function.Consumer;
 
+/**
+ * Every getter accepts either a string path, which is compiled through the cache of {@link ConfigPath}, or a compiled {@link ConfigPath}.
+ */
 public record ConfigurateSection(CommentedConfigurationNode configuration) {
 
     public String getString(String path) {
+        return getString(ConfigPath.of(path));
+    }
+
+    public String getString(ConfigPath path) {
         return get(String.class, path);
     }
 
     public Integer getInteger(String path) {
+        return getInteger(ConfigPath.of(path));
+    }
+
+    public Integer getInteger(ConfigPath path) {
         return get(Integer.class, path);
     }
 
     public Boolean getBoolean(String path) {
+        return getBoolean(ConfigPath.of(path));
+    }
+
+    public Boolean getBoolean(ConfigPath path) {
         return get(Boolean.class, path);
     }
 
     public Long getLong(String path) {
+        return getLong(ConfigPath.of(path));
+    }
+
+    public Long getLong(ConfigPath path) {
         return get(Long.class, path);
     }
 
     public Float getFloat(String path) {
+        return getFloat(ConfigPath.of(path));
+    }
+
+    public Float getFloat(ConfigPath path) {
         return get(Float.class, path);
     }
 
     public boolean getBoolean(String path, boolean defaultValue) {
+        return getBoolean(ConfigPath.of(path), defaultValue);
+    }
+
+    public boolean getBoolean(ConfigPath path, boolean defaultValue) {
         return get(Boolean.class, path, defaultValue);
     }
 
     public int getInt(String path, int defaultValue) {
+        return getInt(ConfigPath.of(path), defaultValue);
+    }
+
+    public int getInt(ConfigPath path, int defaultValue) {
         return get(Integer.class, path, defaultValue);
     }
 
     public long getLong(String path, long defaultValue) {
+        return getLong(ConfigPath.of(path), defaultValue);
+    }
+
+    public long getLong(ConfigPath path, long defaultValue) {
         return get(Long.class, path, defaultValue);
     }
 
     public float getFloat(String path, float defaultValue) {
+        return getFloat(ConfigPath.of(path), defaultValue);
+    }
+
+    public float getFloat(ConfigPath path, float defaultValue) {
         return get(Float.class, path, defaultValue);
     }
 
     public <T> T get(Class<T> clazz, String path) {
+        return get(clazz, ConfigPath.of(path));
+    }
+
+    public <T> T get(Class<T> clazz, ConfigPath path) {
         return configurationFunction(path, node -> {
             if (node.isList()) return null;
             return node.get(clazz);
@@ -58,12 +101,21 @@ public record ConfigurateSection(CommentedConfigurationNode configuration) {
 
     @NotNull
     public <T> T get(Class<T> clazz, String path, T defaultValue) {
+        return get(clazz, ConfigPath.of(path), defaultValue);
+    }
+
+    @NotNull
+    public <T> T get(Class<T> clazz, ConfigPath path, T defaultValue) {
         var present = get(clazz, path);
 
         return present != null ? present : defaultValue;
     }
 
     public Object getObject(String path) {
+        return getObject(ConfigPath.of(path));
+    }
+
+    public Object getObject(ConfigPath path) {
         return configurationFunction(path, node -> {
             if (node.isList()) {
                 return node.getList(String.class);
@@ -75,10 +127,18 @@ public record ConfigurateSection(CommentedConfigurationNode configuration) {
     }
 
     public List<String> getStringList(String path) {
+        return getStringList(ConfigPath.of(path));
+    }
+
+    public List<String> getStringList(ConfigPath path) {
         return getList(String.class, path);
     }
 
     public <T> List<T> getList(Class<T> clazz, String path) {
+        return getList(clazz, ConfigPath.of(path));
+    }
+
+    public <T> List<T> getList(Class<T> clazz, ConfigPath path) {
         return configurationFunction(path, node -> {
             if (!node.isList()) return null;
             return node.getList(clazz);
@@ -86,6 +146,10 @@ public record ConfigurateSection(CommentedConfigurationNode configuration) {
     }
 
     public void set(String path, Object value) {
+        set(ConfigPath.of(path), value);
+    }
+
+    public void set(ConfigPath path, Object value) {
         try {
             resolve(path)
                     .set(value);
@@ -95,29 +159,42 @@ public record ConfigurateSection(CommentedConfigurationNode configuration) {
     }
 
     public CommentedConfigurationNode resolve(String key) {
-        return configuration.node(Splitter.on('.').splitToList(key.replace('_', '-')).toArray());
+        return resolve(ConfigPath.of(key));
+    }
+
+    public CommentedConfigurationNode resolve(ConfigPath path) {
+        return configuration.node(path.nodes());
     }
 
     public <T> T configurationFunction(String path, ThrowableFunction<CommentedConfigurationNode, T, Exception> function) {
+        return configurationFunction(ConfigPath.of(path), function);
+    }
+
+    /**
+     * Resolves the path once, and runs the function on the node, unless it is missing.
+     */
+    public <T> T configurationFunction(ConfigPath path, ThrowableFunction<CommentedConfigurationNode, T, Exception> function) {
         try {
             var node = resolve(path);
             if (node == null || node.isNull() || node.virtual()) return null;
-            return function.run(resolve(path));
+            return function.run(node);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
     public ConfigurateSection getSection(String path) {
+        return getSection(ConfigPath.of(path));
+    }
+
+    /**
+     * A missing section is returned as an empty one, which is attached to the configuration once something is set in it.
+     * Looking a section up therefore never modifies the configuration, which may be shared with other readers.
+     */
+    public ConfigurateSection getSection(ConfigPath path) {
         var node = resolve(path);
 
-        if (node.isNull() || node.virtual()) {
-            try {
-                node.set(new HashMap<>());
-            } catch (SerializationException e) {
-                throw new RuntimeException(e);
-            }
-        }
+        if (node.isNull() || node.virtual()) return new ConfigurateSection(node);
 
         if (!node.isMap()) return null;
 
@@ -129,19 +206,48 @@ public record ConfigurateSection(CommentedConfigurationNode configuration) {
         return key == null ? null : key.toString();
     }
 
+    /**
+     * @return A view of the keys, which is not copied.
+     */
     public Collection<String> getKeys() {
-        return configuration.childrenMap().keySet().stream().map(Object::toString).toList();
+        return Collections2.transform(configuration.childrenMap().keySet(), Object::toString);
     }
 
     public double getDouble(String path) {
+        return getDouble(ConfigPath.of(path));
+    }
+
+    public double getDouble(ConfigPath path) {
         return get(Double.class, path);
     }
 
     @Nullable
     public List<ConfigurateSection> getSectionList(String path) {
+        return getSectionList(ConfigPath.of(path));
+    }
+
+    @Nullable
+    public List<ConfigurateSection> getSectionList(ConfigPath path) {
         return configurationFunction(path, node -> {
             if (!node.isList()) return null;
             return node.getList(CommentedConfigurationNode.class).stream().map(ConfigurateSection::new).toList();
         });
     }
+
+    public void forEachSection(String path, Consumer<ConfigurateSection> consumer) {
+        forEachSection(ConfigPath.of(path), consumer);
+    }
+
+    /**
+     * Visits the sections of the list at the path, without collecting them into a list first. Does nothing, if there is no list.
+     */
+    public void forEachSection(ConfigPath path, Consumer<ConfigurateSection> consumer) {
+        var node = resolve(path);
+
+        if (!node.isList()) return;
+
+        for (var child : node.childrenList()) {
+            consumer.accept(new ConfigurateSection(child));
+        }
+    }
 }
@@ -3,59 +3,356 @@ package cz.oneblock.core.configuration;
 import cz.oneblock.core.BootLoader;
 import cz.oneblock.core.ProjectDaemon;
 import cz.oneblock.core.SystemDaemon;
+import cz.oneblock.core.scheduler.DaemonExecutor;
+import cz.oneblock.core.scheduler.SchedulerDaemon;
 import cz.oneblock.core.util.NeedsConfigurationException;
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.configurate.CommentedConfigurationNode;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
 
+/**
+ * Loads the configurations of the daemons, and writes them behind. Edited configurations are saved by a tick, and the remaining ones when this daemon stops,
+ * which happens only after all the daemons using a configuration have been stopped.
+ * <p>
+ * While started, the directory is watched, and a file changed from outside is reloaded once it has not been changed for a while.
+ * Only its daemon is notified, with the paths which have changed. Writes of the configurations themselves are recognized by their content, and ignored.
+ * <p>
+ * When constructed, the existing files and the references of the registered daemons are parsed in parallel, so the daemons only pick up the results.
+ * A daemon naming its configuration differently from its class, or loaded after the system has started, parses its own.
+ * <p>
+ * The {@link ConfigurationFormat format} of a file is resolved from its extension. An existing file in any registered format is used,
+ * otherwise the file is created in the {@link ProjectDaemon#configurationFormat() format preferred by the daemon}. The same goes for the references.
+ */
 public class ConfigurationDaemon extends ProjectDaemon<BootLoader> {
 
+    private static final Duration SAVE_PERIOD = Duration.ofSeconds(1);
+    private static final Duration WATCH_PERIOD = Duration.ofMillis(250);
+    private static final long DEBOUNCE_NANOS = Duration.ofMillis(500).toNanos();
+    private static final String REFERENCE_FOLDER = "configuration/";
+
     private final Map<ProjectDaemon<?>, ConfigurateConfiguration> configurations;
+    private final Map<String, Long> changedFiles;
+    private final Map<String, CompletableFuture<CommentedConfigurationNode>> preloadedReferences;
+    private final Map<String, CompletableFuture<ConfigurateConfiguration.Parsed>> preloadedFiles;
+    private final List<ConfigurationFormat> formats;
+    private final DaemonExecutor executor;
+    private final ConfigCache cache;
     private final File data;
+    private volatile WatchService watchService;
 
-    private ConfigurationDaemon(SystemDaemon system) {
+    ConfigurationDaemon(SystemDaemon system) {
         super(system);
-        configurations = new HashMap<>();
+        configurations = new ConcurrentHashMap<>();
+        changedFiles = new ConcurrentHashMap<>();
+        preloadedReferences = new ConcurrentHashMap<>();
+        preloadedFiles = new ConcurrentHashMap<>();
+        formats = new CopyOnWriteArrayList<>(List.of(ConfigurationFormat.HOCON, ConfigurationFormat.JSON, ConfigurationFormat.BINARY));
+        executor = obtainDependency(SchedulerDaemon.class).getExecutor(this);
 
         data = new File(bootLoader.getDataFolder(), "configuration");
+        // Outside of the watched directory, so writing the snapshots does not wake the watcher.
+        cache = new ConfigCache(new File(bootLoader.getDataFolder(), "cache/configuration"));
 
         if (data.exists() && !data.isDirectory()) {
             if (!data.delete()) throw new RuntimeException("Failed to delete file: " + data.getAbsolutePath());
         } else if (!data.exists()) {
             if (!data.mkdirs()) throw new RuntimeException("Failed to create directory: " + data.getAbsolutePath());
         }
+
+        preload();
+    }
+
+    /**
+     * Registers a custom format. Files of the format are only preloaded, if it is registered before this daemon is constructed.
+     *
+     * @throws IllegalArgumentException If a format with the same extension is registered already.
+     */
+    public synchronized void registerFormat(ConfigurationFormat format) {
+        if (getFormat(format.getExtension()) != null) throw new IllegalArgumentException("Format " + format.getExtension() + " is registered already");
+
+        formats.add(format);
+    }
+
+    @Nullable
+    private ConfigurationFormat getFormat(String extension) {
+        for (var format : formats) {
+            if (format.getExtension().equals(extension)) return format;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return The preferred format first, followed by the other registered ones.
+     */
+    private List<ConfigurationFormat> getCandidates(ConfigurationFormat preferred) {
+        var candidates = new ArrayList<ConfigurationFormat>(formats.size() + 1);
+        candidates.add(preferred);
+
+        for (var format : formats) {
+            if (!format.getExtension().equals(preferred.getExtension())) candidates.add(format);
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Starts parsing the files, which are likely to be requested. The daemons not using a configuration have no reference, and are skipped.
+     */
+    private void preload() {
+        var baseNames = new LinkedHashSet<String>();
+
+        for (var daemonClass : systemDaemon.getRegisteredDaemons()) {
+            if (ProjectDaemon.class.isAssignableFrom(daemonClass)) {
+                baseNames.add(daemonClass.getSimpleName().replace("Daemon", "").toLowerCase());
+            }
+        }
+
+        var files = data.listFiles();
+        if (files != null) {
+            for (var file : files) {
+                var name = file.getName();
+                var dot = name.lastIndexOf('.');
+
+                if (dot <= 0) continue;
+
+                var format = getFormat(name.substring(dot + 1));
+
+                if (format != null) {
+                    baseNames.add(name.substring(0, dot));
+                    preloadedFiles.put(name, executor.submit(() -> ConfigurateConfiguration.read(file, format, cache)));
+                }
+            }
+        }
+
+        for (var baseName : baseNames) {
+            for (var format : formats) {
+                var name = baseName + "." + format.getExtension();
+                preloadedReferences.put(name, executor.submit(() -> parseReferenceIfPresent(name, format)));
+            }
+        }
+    }
+
+    @Nullable
+    private CommentedConfigurationNode parseReferenceIfPresent(String name, ConfigurationFormat format) {
+        try (var resource = bootLoader.getResourceAsStream(REFERENCE_FOLDER + name)) {
+            if (resource == null) return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return ConfigurateConfiguration.parseReference(bootLoader, REFERENCE_FOLDER + name, format, cache);
+    }
+
+    /**
+     * @return The reference in the preferred format, or in any other, if there is none.
+     */
+    private CommentedConfigurationNode takeReference(String baseName, ConfigurationFormat preferred) {
+        for (var format : getCandidates(preferred)) {
+            var name = baseName + "." + format.getExtension();
+            var reference = takePreloaded(preloadedReferences, name, () -> parseReferenceIfPresent(name, format));
+
+            if (reference != null) return reference;
+        }
+
+        // Fails, as a missing reference always has.
+        return ConfigurateConfiguration.parseReference(bootLoader, REFERENCE_FOLDER + baseName + "." + preferred.getExtension(), preferred, cache);
+    }
+
+    /**
+     * @return The format of the existing file, or the preferred one, if there is no file yet.
+     */
+    private ConfigurationFormat resolveFormat(String baseName, ConfigurationFormat preferred) {
+        for (var format : getCandidates(preferred)) {
+            if (new File(data, baseName + "." + format.getExtension()).exists()) return format;
+        }
+
+        return preferred;
+    }
+
+    /**
+     * @return The preloaded result, or the one computed now, if it has not been preloaded or has failed to.
+     */
+    private static <T> T takePreloaded(Map<String, CompletableFuture<T>> preloaded, String name, Supplier<T> fallback) {
+        var future = preloaded.remove(name);
+
+        if (future != null) {
+            try {
+                var result = future.get();
+                if (result != null) return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Computed again, so the failure is reported to the daemon.
+            }
+        }
+
+        return fallback.get();
     }
 
     public ConfigurateConfiguration getConfiguration(ProjectDaemon<?> daemon) {
-        return configurations.computeIfAbsent(daemon, x -> {
-            var config = new ConfigurateConfiguration(
-                    data,
-                    daemon.getShortName().toLowerCase() + ".conf",
-                    bootLoader
-            );
+        var existing = configurations.get(daemon);
+        if (existing != null) return existing;
+
+        // Loaded outside of the map, so daemons constructed in parallel do not wait on each other's parsing while holding its locks.
+        var config = loadConfiguration(daemon);
+        var raced = configurations.putIfAbsent(daemon, config);
+
+        return raced == null ? config : raced;
+    }
+
+    private ConfigurateConfiguration loadConfiguration(ProjectDaemon<?> daemon) {
+        var baseName = daemon.getShortName().toLowerCase();
+        var format = resolveFormat(baseName, daemon.configurationFormat());
+        var name = baseName + "." + format.getExtension();
+        var config = new ConfigurateConfiguration(
+                new File(data, name),
+                format,
+                takeReference(baseName, daemon.configurationFormat()),
+                cache,
+                daemon.lazyConfiguration()
+        );
+
+        try {
+            if (config.load(daemon.repairConfiguration(), takePreloaded(preloadedFiles, name, () -> null))) {
+                systemDaemon.addDaemonInNeedOfConfiguration(daemon);
+                throw new NeedsConfigurationException();
+            }
+        } catch (CorruptedConfigurationException | IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return config;
+    }
 
+    /**
+     * Saves every configuration edited since its last save.
+     */
+    public void flush() {
+        for (var configuration : configurations.values()) {
             try {
-                if (config.load(daemon.repairConfiguration())) {
-                    systemDaemon.addDaemonInNeedOfConfiguration(daemon);
-                    throw new NeedsConfigurationException();
+                configuration.flush();
+            } catch (IOException e) {
+                logger.error("Failed to save configuration {}", configuration.getFile().getName(), e);
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        for (var configuration : configurations.values()) {
+            if (configuration.isDirty()) {
+                executor.execute(this::flush);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Collects the changed files without blocking, and reloads the ones which have settled.
+     */
+    private void pollChanges() {
+        var service = watchService;
+        if (service == null) return;
+
+        try {
+            WatchKey key;
+            while ((key = service.poll()) != null) {
+                var now = System.nanoTime();
+
+                for (var event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        configurations.values().forEach(configuration -> changedFiles.put(configuration.getFile().getName(), now));
+                    } else {
+                        changedFiles.put(((Path) event.context()).getFileName().toString(), now);
+                    }
                 }
-            } catch (CorruptedConfigurationException | IOException e) {
-                throw new RuntimeException(e);
+
+                key.reset();
             }
+        } catch (ClosedWatchServiceException e) {
+            return;
+        }
+
+        var now = System.nanoTime();
 
-            return config;
+        changedFiles.forEach((name, changedAt) -> {
+            if (now - changedAt < DEBOUNCE_NANOS || !changedFiles.remove(name, changedAt)) return;
+
+            configurations.forEach((daemon, configuration) -> {
+                if (configuration.getFile().getName().equals(name)) executor.execute(() -> reload(daemon));
+            });
         });
     }
 
+    private void reload(ProjectDaemon<?> daemon) {
+        try {
+            var diff = daemon.reloadChangedConfiguration();
+
+            if (diff != null && !diff.isEmpty()) {
+                logger.info("Reloaded configuration of {}, changed {}", daemon.getShortName(), diff);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Failed to reload configuration of {}", daemon.getShortName(), e);
+        }
+    }
+
     @Override
     public void start() {
+        // Whatever has not been picked up by now, belongs to daemons which are not loaded.
+        preloadedReferences.clear();
+        preloadedFiles.clear();
+
+        try {
+            var service = FileSystems.getDefault().newWatchService();
+            data.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchService = service;
+        } catch (IOException e) {
+            logger.warn("Failed to watch the configuration directory, changed files will not be reloaded", e);
+        }
 
+        executor.scheduleAtFixedRate(this::scheduleFlush, SAVE_PERIOD);
+        executor.scheduleAtFixedRate(this::pollChanges, WATCH_PERIOD);
     }
 
     @Override
     public void stop() {
+        var service = watchService;
+        watchService = null;
+        changedFiles.clear();
+
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException e) {
+                logger.warn("Failed to stop watching the configuration directory", e);
+            }
+        }
 
+        flush();
+    }
+
+    @Override
+    public void unLoad() {
+        // Configurations edited while the daemons were loading, if the system never started.
+        flush();
     }
 }
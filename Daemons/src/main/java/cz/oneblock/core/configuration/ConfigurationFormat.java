@@ -0,0 +1,44 @@
+package cz.oneblock.core.configuration;
+
+import org.spongepowered.configurate.CommentedConfigurationNode;
+import org.spongepowered.configurate.ConfigurateException;
+
+import java.util.List;
+
+/**
+ * A format of configuration files, resolved by the {@link ConfigurationDaemon} from the extension of the file.
+ * Every format loads into the same tree, so the {@link ConfigurateSection} reads all of them alike.
+ * <p>
+ * HOCON is meant for the files edited by hand. Generated and machine-edited files are parsed much faster as JSON, or in the binary format.
+ *
+ * @see ConfigurationDaemon#registerFormat(ConfigurationFormat)
+ */
+public interface ConfigurationFormat {
+
+    ConfigurationFormat HOCON = new HoconConfigurationFormat();
+    ConfigurationFormat JSON = new JsonConfigurationFormat();
+    ConfigurationFormat BINARY = new BinaryConfigurationFormat();
+
+    /**
+     * @return The extension of the files, without the dot.
+     */
+    String getExtension();
+
+    /**
+     * @param content The content of the file, which is never empty.
+     */
+    CommentedConfigurationNode parse(byte[] content) throws ConfigurateException;
+
+    byte[] serialize(CommentedConfigurationNode node) throws ConfigurateException;
+
+    /**
+     * @return The built-in format of the file, HOCON if the extension is not known.
+     */
+    static ConfigurationFormat ofFileName(String name) {
+        for (var format : List.of(HOCON, JSON, BINARY)) {
+            if (name.endsWith("." + format.getExtension())) return format;
+        }
+
+        return HOCON;
+    }
+}
@@ -8,4 +8,8 @@ public class CorruptedConfigurationException extends Exception {
     public CorruptedConfigurationException(String message) {
         super(message);
     }
+
+    public CorruptedConfigurationException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
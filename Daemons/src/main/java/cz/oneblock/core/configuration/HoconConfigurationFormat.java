@@ -0,0 +1,46 @@
+package cz.oneblock.core.configuration;
+
+import org.spongepowered.configurate.CommentedConfigurationNode;
+import org.spongepowered.configurate.ConfigurateException;
+import org.spongepowered.configurate.hocon.HoconConfigurationLoader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+final class HoconConfigurationFormat implements ConfigurationFormat {
+
+    @Override
+    public String getExtension() {
+        return "conf";
+    }
+
+    @Override
+    public CommentedConfigurationNode parse(byte[] content) throws ConfigurateException {
+        return HoconConfigurationLoader.builder()
+                .emitComments(true)
+                .prettyPrinting(true)
+                .source(() -> new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8)))
+                .emitJsonCompatible(false)
+                .build()
+                .load();
+    }
+
+    @Override
+    public byte[] serialize(CommentedConfigurationNode node) throws ConfigurateException {
+        var writer = new StringWriter();
+
+        HoconConfigurationLoader.builder()
+                .emitComments(true)
+                .prettyPrinting(true)
+                .emitJsonCompatible(false)
+                .sink(() -> new BufferedWriter(writer))
+                .build()
+                .save(node);
+
+        return writer.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,174 @@
+package cz.oneblock.core.configuration;
+
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.configurate.CommentedConfigurationNode;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+/**
+ * The top-level sections of a configuration, meant for large files such as catalogs.
+ * <p>
+ * When the configuration is lazy and its snapshot is up to date, only the offsets of the sections are indexed when it is loaded,
+ * and a section is decoded from the snapshot the first time it is accessed. Otherwise, the sections wrap the already loaded tree.
+ * Iterating does not copy the sections into a list, and only materializes the ones it reaches.
+ *
+ * @see cz.oneblock.core.ProjectDaemon#getConfigurationSections()
+ */
+public final class LazySections implements Iterable<ConfigurateSection> {
+
+    private final String[] keys;
+    private final Map<String, Integer> index;
+    private final int[] offsets;
+    private final ByteBuffer buffer;
+    private final int rootOffset;
+    private final AtomicReferenceArray<ConfigurateSection> sections;
+
+    private LazySections(String[] keys, int[] offsets, ByteBuffer buffer, int rootOffset) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.buffer = buffer;
+        this.rootOffset = rootOffset;
+        this.sections = new AtomicReferenceArray<>(keys.length);
+
+        var index = new LinkedHashMap<String, Integer>(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            index.put(keys[i], i);
+        }
+
+        this.index = Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Indexes the sections of the snapshot in a single pass, skipping over their content.
+     *
+     * @param buffer The snapshot positioned at the root node, which is not modified.
+     * @return The sections, or null if the root is not a map, or the snapshot is damaged.
+     */
+    @Nullable
+    static LazySections index(ByteBuffer buffer) {
+        var reader = buffer.duplicate();
+        var rootOffset = reader.position();
+
+        try {
+            var size = BinaryConfigurationFormat.readMapHeader(reader);
+            if (size < 0) return null;
+
+            var keys = new String[size];
+            var offsets = new int[size];
+
+            for (int i = 0; i < size; i++) {
+                keys[i] = BinaryConfigurationFormat.readKey(reader);
+                offsets[i] = reader.position();
+                BinaryConfigurationFormat.skip(reader);
+            }
+
+            return new LazySections(keys, offsets, buffer, rootOffset);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Wraps the sections of an already loaded tree.
+     */
+    static LazySections of(CommentedConfigurationNode root) {
+        var children = root.childrenMap();
+        var keys = new String[children.size()];
+        var sections = new ConfigurateSection[children.size()];
+
+        int i = 0;
+        for (var entry : children.entrySet()) {
+            keys[i] = entry.getKey().toString();
+            sections[i] = new ConfigurateSection(entry.getValue());
+            i++;
+        }
+
+        var lazySections = new LazySections(keys, null, null, 0);
+        for (i = 0; i < sections.length; i++) {
+            lazySections.sections.set(i, sections[i]);
+        }
+
+        return lazySections;
+    }
+
+    /**
+     * Decodes the whole tree from the snapshot, which is needed for editing, saving and computing differences.
+     */
+    CommentedConfigurationNode materialize() {
+        var root = CommentedConfigurationNode.root();
+        BinaryConfigurationFormat.decode(buffer.duplicate().position(rootOffset), root);
+        return root;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return An unmodifiable view of the keys of the sections, in the order of the file.
+     */
+    public Set<String> keys() {
+        return index.keySet();
+    }
+
+    public boolean contains(String key) {
+        return index.containsKey(key);
+    }
+
+    /**
+     * @return The section, decoded on the first call, or null if there is no such section.
+     */
+    @Nullable
+    public ConfigurateSection get(String key) {
+        var slot = index.get(key);
+        return slot == null ? null : get(slot);
+    }
+
+    private ConfigurateSection get(int slot) {
+        var section = sections.get(slot);
+        if (section != null) return section;
+
+        var node = CommentedConfigurationNode.root().node(keys[slot]);
+        BinaryConfigurationFormat.decode(buffer.duplicate().position(offsets[slot]), node);
+
+        section = new ConfigurateSection(node);
+
+        // Decoded twice at worst, readers agree on the first one published.
+        return sections.compareAndSet(slot, null, section) ? section : sections.get(slot);
+    }
+
+    /**
+     * Visits the sections in the order of the file, decoding the ones which have not been accessed yet.
+     */
+    public void forEach(BiConsumer<String, ConfigurateSection> consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            consumer.accept(keys[i], get(i));
+        }
+    }
+
+    @Override
+    public Iterator<ConfigurateSection> iterator() {
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < keys.length;
+            }
+
+            @Override
+            public ConfigurateSection next() {
+                if (next >= keys.length) throw new NoSuchElementException();
+                return get(next++);
+            }
+        };
+    }
+}
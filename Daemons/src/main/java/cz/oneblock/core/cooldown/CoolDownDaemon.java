@@ -5,9 +5,8 @@ import cz.oneblock.core.BootLoader;
 import cz.oneblock.core.SystemDaemon;
 
 import java.time.Duration;
-import java.time.LocalDateTime;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 public class CoolDownDaemon extends AbstractDaemon<BootLoader> {
@@ -17,16 +16,36 @@ public class CoolDownDaemon extends AbstractDaemon<BootLoader> {
     protected CoolDownDaemon(SystemDaemon systemD) {
         super(systemD);
 
-        rateLimiters = new HashMap<>();
+        rateLimiters = new ConcurrentHashMap<>();
     }
 
+    /**
+     * The window of a limiter is set by the first call using it.
+     */
     private RateLimiter<Object> getRateLimiter(String key, long time) {
+        var rateLimiter = rateLimiters.get(key);
+        if (rateLimiter != null) return rateLimiter;
+
         return rateLimiters.computeIfAbsent(key, x -> new RateLimiter<>(time, TimeUnit.MILLISECONDS));
     }
 
+    /**
+     * Does not allocate, once the limiter exists.
+     *
+     * @param time The window in milliseconds.
+     * @return 0 if the key has been let through, otherwise the nanoseconds left until it will be.
+     */
+    public long throttleNanos(String limiter, Object key, long time) {
+        return getRateLimiter(limiter, time).tryAcquire(key);
+    }
+
+    /**
+     * @param time The window in milliseconds.
+     * @return Null if the key has been let through, otherwise the time left until it will be.
+     */
     public Duration throttle(String limiter, Object key, long time) {
-        var limit = getRateLimiter(limiter, time).tryAndLimit(key);
-        return limit == null ? null : Duration.between(LocalDateTime.now(), limit);
+        var remaining = throttleNanos(limiter, key, time);
+        return remaining == 0 ? null : Duration.ofNanos(remaining);
     }
 
     @Override
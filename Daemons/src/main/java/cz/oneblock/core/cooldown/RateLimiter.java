@@ -1,37 +1,157 @@
 package cz.oneblock.core.cooldown;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
-import com.github.benmanes.caffeine.cache.Ticker;
-
-import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Lets every key through once per window.
+ * <p>
+ * The deadlines are {@link System#nanoTime()} values, kept in open-addressed tables split into segments, each guarded by its own lock.
+ * A key takes one reference and one long, and acquiring does not allocate. Expired entries are reused by the next key probing over them,
+ * and swept out when a segment fills up, so the memory follows the number of keys limited within the last window.
+ */
 public class RateLimiter<T> {
 
-    private final Cache<T, LocalDateTime> expiring;
-    private final long amount;
-    private final TimeUnit unit;
+    private static final int MIN_CAPACITY = 16;
+
+    private final long windowNanos;
+    private final Segment[] segments;
+    private final int segmentShift;
 
     public RateLimiter(long amount, TimeUnit unit) {
-        this.amount = amount;
-        this.unit = unit;
-        expiring = Caffeine.newBuilder()
-                .ticker(Ticker.systemTicker())
-                .expireAfterWrite(amount, unit)
-                .build();
+        this.windowNanos = unit.toNanos(amount);
+
+        if (windowNanos <= 0) throw new IllegalArgumentException("The window must be positive");
+
+        var segmentCount = Integer.highestOneBit(Math.max(2, Runtime.getRuntime().availableProcessors() * 4) - 1) << 1;
+        segments = new Segment[segmentCount];
+        segmentShift = Integer.SIZE - Integer.numberOfTrailingZeros(segmentCount);
+
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Lets the key through, if its window has passed, and starts a new one.
+     *
+     * @return 0 if the key has been let through, otherwise the nanoseconds left until it will be.
+     */
+    public long tryAcquire(T key) {
+        var hash = spread(key.hashCode());
+        // The top bits pick the segment, the bottom ones the slot, so they do not correlate.
+        var segment = segments[hash >>> segmentShift];
+
+        synchronized (segment) {
+            return segment.tryAcquire(key, hash, System.nanoTime(), windowNanos);
+        }
     }
 
+    /**
+     * @return Null if the key has been let through, otherwise the time it will be.
+     * @see #tryAcquire(Object)
+     */
     public LocalDateTime tryAndLimit(T t) {
-        var wasLimited = new AtomicReference<>(true);
-        var time = expiring.get(t, x -> {
-            wasLimited.set(false);
-            return LocalDateTime.now().plus(Duration.ofMillis(unit.toMillis(amount)));
-        });
-        var limited = wasLimited.get();
-        return limited ? time : null;
+        var remaining = tryAcquire(t);
+        return remaining == 0 ? null : LocalDateTime.now().plusNanos(remaining);
     }
 
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Segment {
+
+        private Object[] keys = new Object[MIN_CAPACITY];
+        private long[] deadlines = new long[MIN_CAPACITY];
+        private int size;
+
+        long tryAcquire(Object key, int hash, long now, long windowNanos) {
+            var mask = keys.length - 1;
+            var index = hash & mask;
+            var reusable = -1;
+
+            Object present;
+            while ((present = keys[index]) != null) {
+                if (present == key || present.equals(key)) {
+                    var remaining = deadlines[index] - now;
+
+                    if (remaining > 0) return remaining;
+
+                    deadlines[index] = now + windowNanos;
+                    return 0;
+                }
+
+                // Keeps probing, the key may still be further along.
+                if (reusable < 0 && deadlines[index] - now <= 0) reusable = index;
+
+                index = (index + 1) & mask;
+            }
+
+            if (reusable >= 0) {
+                keys[reusable] = key;
+                deadlines[reusable] = now + windowNanos;
+                return 0;
+            }
+
+            if ((size + 1) * 4 > keys.length * 3) {
+                sweep(now);
+                insert(key, hash, now + windowNanos);
+            } else {
+                keys[index] = key;
+                deadlines[index] = now + windowNanos;
+            }
+
+            size++;
+            return 0;
+        }
+
+        /**
+         * Drops the expired entries, and resizes the table so the remaining ones fill a quarter to a half of it.
+         */
+        private void sweep(long now) {
+            var oldKeys = keys;
+            var oldDeadlines = deadlines;
+            var live = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null && oldDeadlines[i] - now > 0) live++;
+            }
+
+            var capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, (live + 1) * 2)) << 1);
+
+            keys = new Object[capacity];
+            deadlines = new long[capacity];
+            size = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                var key = oldKeys[i];
+
+                if (key != null && oldDeadlines[i] - now > 0) {
+                    insert(key, spread(key.hashCode()), oldDeadlines[i]);
+                    size++;
+                }
+            }
+        }
+
+        private void insert(Object key, int hash, long deadline) {
+            var mask = keys.length - 1;
+            var index = hash & mask;
+
+            while (keys[index] != null) {
+                index = (index + 1) & mask;
+            }
+
+            keys[index] = key;
+            deadlines[index] = deadline;
+        }
+    }
 }
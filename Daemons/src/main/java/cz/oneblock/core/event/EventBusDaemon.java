@@ -0,0 +1,299 @@
+package cz.oneblock.core.event;
+
+import com.google.common.base.Throwables;
+import com.google.common.primitives.Primitives;
+import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.MoreExecutors;
+import cz.oneblock.core.AbstractDaemon;
+import cz.oneblock.core.BootLoader;
+import cz.oneblock.core.SystemDaemon;
+import cz.oneblock.core.scheduler.SchedulerDaemon;
+import cz.oneblock.core.state.State;
+import cz.oneblock.core.state.StateListener;
+import cz.oneblock.core.util.ReflectionUtil;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Delivers typed events between daemons, so they do not have to hold references to everything interested in what they do.
+ * <p>
+ * Every published class gets a dispatch table, an array of the subscriptions to it and all its supertypes, built on its first publication.
+ * Publishing only looks the table up and walks it, synchronous delivery allocates nothing. The tables are rebuilt after the subscriptions change, which is expected to be rare.
+ * <p>
+ * Subscriber methods are called through classes spun by {@link LambdaMetafactory}, or through method handles where the subscriber is not accessible for that.
+ * Asynchronous subscribers receive the events on the executor of their daemon, so their deliveries are drained together with the rest of their tasks.
+ * All the subscriptions of a daemon are cancelled when it starts stopping.
+ */
+@SuppressWarnings("UnstableApiUsage")
+public class EventBusDaemon extends AbstractDaemon<BootLoader> {
+
+    private static final Subscription[] NONE = new Subscription[0];
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final BiConsumer<Object, Object> CONSUMER_INVOKER = (subscriber, event) -> ((Consumer<Object>) subscriber).accept(event);
+
+    private final SchedulerDaemon scheduler;
+    private final Object lock = new Object();
+
+    // Guarded by the lock.
+    private final Map<Class<?>, List<Subscription>> subscriptions = new HashMap<>();
+    private final Map<AbstractDaemon<?>, Owner> owners = new IdentityHashMap<>();
+    private long nextSequence;
+
+    // Only ever written under the lock, so a table cannot be published after the subscriptions it was built from have changed.
+    private final Map<Class<?>, Subscription[]> dispatch = new ConcurrentHashMap<>();
+    private final Map<Method, BiConsumer<Object, Object>> invokers = new ConcurrentHashMap<>();
+
+    protected EventBusDaemon(SystemDaemon systemDaemon) {
+        super(systemDaemon);
+
+        scheduler = obtainDependency(SchedulerDaemon.class);
+    }
+
+    /**
+     * Subscribes all the methods of the daemon annotated with {@link Subscribe}. They are unsubscribed when the daemon starts stopping, a daemon being
+     * started again has to register again, usually from its {@code start()}.
+     *
+     * @return The created subscriptions.
+     * @throws IllegalArgumentException If an annotated method is static, or does not take exactly one parameter of a reference type.
+     */
+    public List<Subscription> register(AbstractDaemon<?> daemon) {
+        var created = new ArrayList<Subscription>();
+        var seen = new HashSet<String>();
+
+        for (Method method : ReflectionUtil.getAllMethods(daemon.getClass())) {
+            var annotation = method.getAnnotation(Subscribe.class);
+
+            if (annotation == null || method.isBridge() || method.isSynthetic()) continue;
+
+            // Overriding methods are called virtually, so the overridden ones must not be subscribed again.
+            if (!seen.add(method.getName() + Arrays.toString(method.getParameterTypes()))) continue;
+
+            if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 1 || method.getParameterTypes()[0].isPrimitive()) {
+                throw new IllegalArgumentException("Subscriber method " + method + " must be an instance method with exactly one parameter of a reference type");
+            }
+
+            created.add(new Subscription(
+                    this,
+                    daemon,
+                    daemon,
+                    method.getParameterTypes()[0],
+                    getInvoker(method),
+                    annotation.async() ? scheduler.getExecutor(daemon) : null,
+                    daemon.getShortName() + "#" + method.getName(),
+                    logger
+            ));
+        }
+
+        add(daemon, created);
+
+        return created;
+    }
+
+    /**
+     * Subscribes the handler, until the owner starts stopping or the subscription is cancelled.
+     *
+     * @param async Whether the events are delivered on the executor of the owner, instead of the thread publishing them.
+     */
+    public <E> Subscription subscribe(AbstractDaemon<?> owner, Class<E> eventType, Consumer<? super E> handler, boolean async) {
+        var subscription = new Subscription(
+                this,
+                owner,
+                handler,
+                Primitives.wrap(eventType),
+                CONSUMER_INVOKER,
+                async ? scheduler.getExecutor(owner) : null,
+                owner.getShortName() + "#" + eventType.getSimpleName(),
+                logger
+        );
+
+        add(owner, List.of(subscription));
+
+        return subscription;
+    }
+
+    /**
+     * Cancels all the subscriptions of the daemon.
+     */
+    public void unregister(AbstractDaemon<?> daemon) {
+        synchronized (lock) {
+            var owner = owners.remove(daemon);
+
+            if (owner == null) return;
+
+            daemon.removeStateListener(owner.listener());
+
+            for (var subscription : owner.subscriptions()) {
+                remove(subscription);
+            }
+
+            dispatch.clear();
+        }
+    }
+
+    void unsubscribe(Subscription subscription) {
+        synchronized (lock) {
+            if (!subscription.isActive()) return;
+
+            var owner = owners.get(subscription.getOwner());
+
+            if (owner != null) owner.subscriptions().remove(subscription);
+
+            remove(subscription);
+            dispatch.clear();
+        }
+    }
+
+    /**
+     * Delivers the event to the subscribers of its class and all its supertypes, in the order they have subscribed.
+     * Synchronous subscribers are called on this thread before the method returns, exceptions thrown by them are logged.
+     */
+    public void publish(Object event) {
+        var table = dispatch.get(event.getClass());
+
+        if (table == null) {
+            table = buildTable(event.getClass());
+        }
+
+        for (Subscription subscription : table) {
+            subscription.deliver(event);
+        }
+    }
+
+    /**
+     * @return Whether anybody would receive an event of the class, useful to skip constructing expensive events.
+     */
+    public boolean hasSubscribers(Class<?> eventClass) {
+        var table = dispatch.get(eventClass);
+
+        if (table == null) {
+            table = buildTable(eventClass);
+        }
+
+        return table.length > 0;
+    }
+
+    private void add(AbstractDaemon<?> daemon, List<Subscription> added) {
+        synchronized (lock) {
+            var owner = owners.get(daemon);
+
+            if (owner == null) {
+                // Notified on the thread stopping the daemon, before its stop() runs.
+                StateListener listener = (oldState, newState) -> {
+                    if (newState == State.STOPPING) unregister(daemon);
+                };
+
+                owner = new Owner(listener, new ArrayList<>());
+                owners.put(daemon, owner);
+                daemon.addStateListener(listener, MoreExecutors.directExecutor());
+            }
+
+            for (var subscription : added) {
+                subscription.sequence = nextSequence++;
+                subscriptions.computeIfAbsent(subscription.getEventType(), x -> new ArrayList<>()).add(subscription);
+                owner.subscriptions().add(subscription);
+            }
+
+            dispatch.clear();
+        }
+    }
+
+    private void remove(Subscription subscription) {
+        subscription.deactivate();
+
+        var list = subscriptions.get(subscription.getEventType());
+
+        if (list != null && list.remove(subscription) && list.isEmpty()) {
+            subscriptions.remove(subscription.getEventType());
+        }
+    }
+
+    private Subscription[] buildTable(Class<?> eventClass) {
+        synchronized (lock) {
+            var table = dispatch.get(eventClass);
+
+            if (table != null) return table;
+
+            var matching = new ArrayList<Subscription>();
+
+            for (Class<?> type : TypeToken.of(eventClass).getTypes().rawTypes()) {
+                matching.addAll(subscriptions.getOrDefault(type, List.of()));
+            }
+
+            matching.sort(Comparator.comparingLong(subscription -> subscription.sequence));
+
+            table = matching.isEmpty() ? NONE : matching.toArray(Subscription[]::new);
+            dispatch.put(eventClass, table);
+
+            return table;
+        }
+    }
+
+    private BiConsumer<Object, Object> getInvoker(Method method) {
+        return invokers.computeIfAbsent(method, EventBusDaemon::createInvoker);
+    }
+
+    /**
+     * Spins a class calling the method directly, which the JIT can inline. Falls back to a method handle, if the lookup of the subscriber cannot define it.
+     * The spun class implements a JDK interface, so it is visible from the class loader of any subscriber.
+     */
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> createInvoker(Method method) {
+        MethodHandle handle;
+        MethodHandles.Lookup lookup;
+
+        try {
+            lookup = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+            handle = lookup.unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Subscriber method " + method + " is not accessible", e);
+        }
+
+        try {
+            var site = LambdaMetafactory.metafactory(
+                    lookup,
+                    "accept",
+                    MethodType.methodType(BiConsumer.class),
+                    INVOKER_TYPE,
+                    handle,
+                    handle.type().changeReturnType(void.class)
+            );
+
+            return (BiConsumer<Object, Object>) site.getTarget().invokeExact();
+        } catch (Throwable e) {
+            // The lookup does not have full privilege access.
+            var erased = handle.asType(INVOKER_TYPE);
+
+            return (subscriber, event) -> {
+                try {
+                    erased.invokeExact(subscriber, event);
+                } catch (Throwable t) {
+                    Throwables.throwIfUnchecked(t);
+                    throw new UndeclaredThrowableException(t);
+                }
+            };
+        }
+    }
+
+    @Override
+    public void start() {
+
+    }
+
+    @Override
+    public void stop() {
+
+    }
+
+    private record Owner(StateListener listener, List<Subscription> subscriptions) {
+    }
+}
@@ -0,0 +1,24 @@
+package cz.oneblock.core.event;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a method of a daemon, which receives events published on the {@link EventBusDaemon}. The method must take exactly one parameter, the type of the event.
+ * Events of subtypes of the parameter are received as well.
+ * <p>
+ * The method is found by {@link EventBusDaemon#register(cz.oneblock.core.AbstractDaemon)}, and unregistered when the daemon stops.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Subscribe {
+
+    /**
+     * Whether the event is delivered on the executor of the daemon, see {@link cz.oneblock.core.scheduler.SchedulerDaemon#getExecutor(cz.oneblock.core.AbstractDaemon)},
+     * instead of the thread publishing it.
+     */
+    boolean async() default false;
+
+}
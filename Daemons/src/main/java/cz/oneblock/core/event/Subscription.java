@@ -0,0 +1,94 @@
+package cz.oneblock.core.event;
+
+import cz.oneblock.core.AbstractDaemon;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+/**
+ * A subscriber registered on the {@link EventBusDaemon}. It is cancelled automatically when its owner stops.
+ */
+public final class Subscription {
+
+    private final EventBusDaemon bus;
+    private final AbstractDaemon<?> owner;
+    private final Object target;
+    private final Class<?> eventType;
+    private final BiConsumer<Object, Object> invoker;
+    private final Executor executor;
+    private final String name;
+    private final Logger logger;
+
+    // Assigned under the lock of the bus before the subscription is published, and used to keep the registration order.
+    long sequence;
+    private volatile boolean active = true;
+
+    Subscription(EventBusDaemon bus, AbstractDaemon<?> owner, Object target, Class<?> eventType, BiConsumer<Object, Object> invoker, @Nullable Executor executor, String name, Logger logger) {
+        this.bus = bus;
+        this.owner = owner;
+        this.target = target;
+        this.eventType = eventType;
+        this.invoker = invoker;
+        this.executor = executor;
+        this.name = name;
+        this.logger = logger;
+    }
+
+    public AbstractDaemon<?> getOwner() {
+        return owner;
+    }
+
+    public Class<?> getEventType() {
+        return eventType;
+    }
+
+    public boolean isAsync() {
+        return executor != null;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Stops the delivery of events. Events being delivered right now are not interrupted.
+     */
+    public void cancel() {
+        bus.unsubscribe(this);
+    }
+
+    void deactivate() {
+        active = false;
+    }
+
+    void deliver(Object event) {
+        if (!active) return;
+
+        if (executor == null) {
+            invoke(event);
+            return;
+        }
+
+        try {
+            executor.execute(() -> invoke(event));
+        } catch (RejectedExecutionException e) {
+            // The owner is stopping, the subscription is about to be cancelled.
+        }
+    }
+
+    private void invoke(Object event) {
+        try {
+            invoker.accept(target, event);
+        } catch (RuntimeException e) {
+            logger.error("Subscriber {} has failed to handle {}", name, event.getClass().getSimpleName(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Subscription{" + name + ", " + eventType.getSimpleName() + '}';
+    }
+}
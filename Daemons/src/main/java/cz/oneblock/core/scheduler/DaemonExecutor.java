@@ -0,0 +1,290 @@
+package cz.oneblock.core.scheduler;
+
+import cz.oneblock.core.AbstractDaemon;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The executor of a single daemon, handed out by {@link SchedulerDaemon#getExecutor(AbstractDaemon)}.
+ * <p>
+ * {@link #execute(Runnable)} and {@link #submit(Callable)} are meant for blocking work, and run on virtual threads where available.
+ * CPU-bound work should use {@link #cpu()} or {@link #submitCpu(Callable)}, which run on a small shared pool of platform threads.
+ * <p>
+ * Once the daemon has stopped, after its stop() has returned, the ticks are cancelled, the tasks which have not started yet are cancelled, and the running ones are waited for.
+ * Work can therefore still be scheduled from stop(), but until the daemon is started again, new tasks are rejected.
+ */
+public class DaemonExecutor implements Executor {
+
+    private final AbstractDaemon<?> owner;
+    private final ExecutorService blocking;
+    private final ExecutorService cpu;
+    private final ScheduledExecutorService ticker;
+    private final Logger logger;
+
+    private final Set<TrackedTask<?>> tasks = ConcurrentHashMap.newKeySet();
+    private final Set<Tick> ticks = ConcurrentHashMap.newKeySet();
+    private final Executor cpuView = this::executeCpu;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder overruns = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder queueLatencyNanos = new LongAdder();
+    private final AtomicLong maxQueueLatencyNanos = new AtomicLong();
+
+    // Guards closing against tasks being added, so every task accepted before the drain is also seen by it.
+    private final Object lock = new Object();
+    private volatile boolean closed;
+
+    DaemonExecutor(AbstractDaemon<?> owner, ExecutorService blocking, ExecutorService cpu, ScheduledExecutorService ticker, Logger logger) {
+        this.owner = owner;
+        this.blocking = blocking;
+        this.cpu = cpu;
+        this.ticker = ticker;
+        this.logger = logger;
+    }
+
+    /**
+     * Runs blocking work. Exceptions are logged.
+     */
+    @Override
+    public void execute(Runnable command) {
+        track(blocking, Executors.callable(command), true);
+    }
+
+    /**
+     * Runs CPU-bound work. Exceptions are logged.
+     */
+    public void executeCpu(Runnable command) {
+        track(cpu, Executors.callable(command), true);
+    }
+
+    /**
+     * @return An executor running CPU-bound work, for example for {@link CompletableFuture#supplyAsync(java.util.function.Supplier, Executor)}.
+     */
+    public Executor cpu() {
+        return cpuView;
+    }
+
+    /**
+     * Runs blocking work. Cancelling the returned future does not interrupt the task.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        return track(blocking, task, false);
+    }
+
+    /**
+     * Runs CPU-bound work. Cancelling the returned future does not interrupt the task.
+     */
+    public <T> CompletableFuture<T> submitCpu(Callable<T> task) {
+        return track(cpu, task, false);
+    }
+
+    /**
+     * Runs the task on the CPU pool every period, starting after one period.
+     */
+    public Tick scheduleAtFixedRate(Runnable task, Duration period) {
+        if (period.isNegative() || period.isZero()) throw new IllegalArgumentException("The period must be positive");
+
+        var tick = new Tick(this, task, period);
+
+        synchronized (lock) {
+            requireOpen();
+            ticks.add(tick);
+        }
+
+        // A drain racing with this has cancelled the tick already, which then cancels the future as soon as it is set.
+        tick.setFuture(ticker.scheduleAtFixedRate(tick::fire, period.toNanos(), period.toNanos(), TimeUnit.NANOSECONDS));
+
+        return tick;
+    }
+
+    public SchedulerStats getStats() {
+        var startedCount = started.sum();
+        var averageLatency = startedCount == 0 ? 0 : queueLatencyNanos.sum() / startedCount;
+
+        return new SchedulerStats(
+                submitted.sum(),
+                completed.sum(),
+                failed.sum(),
+                cancelled.sum(),
+                tasks.size(),
+                overruns.sum(),
+                Duration.ofNanos(averageLatency),
+                Duration.ofNanos(maxQueueLatencyNanos.get())
+        );
+    }
+
+    void executeTick(Runnable run) {
+        track(cpu, Executors.callable(run), true);
+    }
+
+    void recordOverrun() {
+        overruns.increment();
+    }
+
+    void warn(String message, Object... arguments) {
+        var withOwner = new Object[arguments.length + 1];
+        withOwner[0] = owner.getShortName();
+        System.arraycopy(arguments, 0, withOwner, 1, arguments.length);
+
+        logger.warn(message, withOwner);
+    }
+
+    /**
+     * Cancels the ticks and the tasks which have not started yet, and waits for the running ones. Tasks still running after the timeout are interrupted.
+     */
+    void drain(Duration timeout) {
+        synchronized (lock) {
+            closed = true;
+        }
+
+        ticks.forEach(Tick::cancel);
+        ticks.clear();
+
+        for (var task : tasks) {
+            // A task which has just been picked up by a thread is not cancelled, but waited for below.
+            task.cancelIfNotStarted();
+        }
+
+        var deadline = System.nanoTime() + timeout.toNanos();
+
+        for (var task : List.copyOf(tasks)) {
+            // The daemon is being stopped from one of its own tasks.
+            if (task.runner == Thread.currentThread()) continue;
+
+            try {
+                task.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                task.cancel(true);
+                logger.warn("A task of daemon {} has not finished within {} ms after stopping, interrupting it", owner.getShortName(), timeout.toMillis());
+            } catch (CancellationException | ExecutionException ignored) {
+                // Already counted.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    void reopen() {
+        synchronized (lock) {
+            closed = false;
+        }
+    }
+
+    private void requireOpen() {
+        if (closed) throw new RejectedExecutionException("Daemon " + owner.getShortName() + " is not running");
+    }
+
+    private <T> CompletableFuture<T> track(ExecutorService pool, Callable<T> callable, boolean logFailure) {
+        var result = new CompletableFuture<T>();
+        var task = new TrackedTask<>(callable, result, logFailure);
+
+        synchronized (lock) {
+            requireOpen();
+            tasks.add(task);
+        }
+
+        submitted.increment();
+
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException e) {
+            tasks.remove(task);
+            task.cancel(false);
+            throw e;
+        }
+
+        return result;
+    }
+
+    private void recordQueueLatency(long nanos) {
+        started.increment();
+        queueLatencyNanos.add(nanos);
+        maxQueueLatencyNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private final class TrackedTask<T> extends FutureTask<T> {
+
+        private final long submittedAt = System.nanoTime();
+        private final CompletableFuture<T> result;
+        private final boolean logFailure;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile Thread runner;
+        private volatile boolean threw;
+
+        private TrackedTask(Callable<T> callable, CompletableFuture<T> result, boolean logFailure) {
+            super(callable);
+            this.result = result;
+            this.logFailure = logFailure;
+        }
+
+        /**
+         * Either this or {@link #run()} claims the task, so a task is never cancelled once a thread has picked it up.
+         */
+        private void cancelIfNotStarted() {
+            if (claimed.compareAndSet(false, true)) cancel(false);
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true) || isDone()) return;
+
+            recordQueueLatency(System.nanoTime() - submittedAt);
+            runner = Thread.currentThread();
+
+            try {
+                super.run();
+            } finally {
+                runner = null;
+            }
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            threw = true;
+
+            if (logFailure) {
+                logger.error("A task of daemon {} has failed", owner.getShortName(), t);
+            }
+
+            super.setException(t);
+        }
+
+        @Override
+        protected void done() {
+            tasks.remove(this);
+
+            if (isCancelled()) {
+                cancelled.increment();
+                result.cancel(false);
+                return;
+            }
+
+            if (threw) {
+                failed.increment();
+            } else {
+                completed.increment();
+            }
+
+            try {
+                result.complete(get());
+            } catch (ExecutionException e) {
+                result.completeExceptionally(e.getCause());
+            } catch (InterruptedException | CancellationException e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package cz.oneblock.core.scheduler;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import cz.oneblock.core.AbstractDaemon;
+import cz.oneblock.core.BootLoader;
+import cz.oneblock.core.SystemDaemon;
+import cz.oneblock.core.state.State;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.*;
+
+/**
+ * Owns the threads of all the daemons, so they do not have to create their own pools and timers.
+ * <p>
+ * Every daemon gets its own {@link DaemonExecutor}, which tracks its tasks and is drained automatically once the daemon has stopped.
+ * Blocking work runs on virtual threads when the runtime supports them, otherwise on a cached pool. CPU-bound work and ticks share a pool sized to the processors.
+ */
+public class SchedulerDaemon extends AbstractDaemon<BootLoader> {
+
+    private final Map<AbstractDaemon<?>, DaemonExecutor> executors;
+    private final ExecutorService blocking;
+    private final ExecutorService cpu;
+    private final ScheduledThreadPoolExecutor ticker;
+    private volatile Duration drainTimeout;
+
+    protected SchedulerDaemon(SystemDaemon systemDaemon) {
+        super(systemDaemon);
+
+        executors = new ConcurrentHashMap<>();
+        blocking = createBlockingExecutor();
+        cpu = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), createThreadFactory("daemsus-cpu-%d"));
+        ticker = new ScheduledThreadPoolExecutor(1, createThreadFactory("daemsus-ticker-%d"));
+        ticker.setRemoveOnCancelPolicy(true);
+        drainTimeout = Duration.ofSeconds(5);
+    }
+
+    private static ThreadFactory createThreadFactory(String nameFormat) {
+        return new ThreadFactoryBuilder()
+                .setNameFormat(nameFormat)
+                .setDaemon(true)
+                .build();
+    }
+
+    /**
+     * Virtual threads are looked up reflectively, as the project targets Java 17.
+     */
+    private static ExecutorService createBlockingExecutor() {
+        try {
+            var factory = MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            return (ExecutorService) factory.invokeExact();
+        } catch (NoSuchMethodException | IllegalAccessException | UnsupportedOperationException e) {
+            // Before Java 21, or a preview feature which is not enabled.
+            return Executors.newCachedThreadPool(createThreadFactory("daemsus-blocking-%d"));
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to create the virtual thread executor", e);
+        }
+    }
+
+    /**
+     * @return The executor of the daemon, created on the first call.
+     */
+    public DaemonExecutor getExecutor(AbstractDaemon<?> daemon) {
+        return executors.computeIfAbsent(daemon, x -> {
+            var executor = new DaemonExecutor(daemon, blocking, cpu, ticker, logger);
+
+            // Drained only after stop() and stopAsync() have finished, so the cleanup they schedule still runs. Notified on the thread finishing the stop,
+            // the stop of the daemon only completes once its tasks have been drained.
+            daemon.addStateListener((oldState, newState) -> {
+                if (oldState == State.STOPPING && newState == State.LOADED) {
+                    executor.drain(drainTimeout);
+                } else if (newState == State.STARTING) {
+                    executor.reopen();
+                } else if (newState == State.UNLOADED) {
+                    executors.remove(daemon, executor);
+                }
+            }, MoreExecutors.directExecutor());
+
+            return executor;
+        });
+    }
+
+    /**
+     * @return The statistics of every daemon, which has an executor.
+     */
+    public Map<Class<?>, SchedulerStats> getStats() {
+        var stats = new LinkedHashMap<Class<?>, SchedulerStats>();
+        executors.forEach((daemon, executor) -> stats.put(daemon.getClass(), executor.getStats()));
+        return stats;
+    }
+
+    /**
+     * Sets how long the running tasks of a stopping daemon are waited for, before they are interrupted. 5 seconds by default.
+     */
+    public void setDrainTimeout(Duration drainTimeout) {
+        this.drainTimeout = Objects.requireNonNull(drainTimeout);
+    }
+
+    @Override
+    public void start() {
+
+    }
+
+    @Override
+    public void stop() {
+        // Daemons depending on the scheduler have been stopped already, this only catches the ones obtaining it in other ways.
+        executors.values().forEach(executor -> executor.drain(drainTimeout));
+    }
+
+    @Override
+    public void unLoad() {
+        ticker.shutdownNow();
+        cpu.shutdown();
+        blocking.shutdown();
+
+        try {
+            var deadline = System.nanoTime() + drainTimeout.toNanos();
+
+            if (!cpu.awaitTermination(drainTimeout.toNanos(), TimeUnit.NANOSECONDS)
+                    || !blocking.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                logger.warn("Some tasks have not finished within {} ms, abandoning them", drainTimeout.toMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
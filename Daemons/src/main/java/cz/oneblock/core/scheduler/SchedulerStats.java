@@ -0,0 +1,19 @@
+package cz.oneblock.core.scheduler;
+
+import java.time.Duration;
+
+/**
+ * The tasks of a single daemon, since its executor was created.
+ *
+ * @param submitted           The tasks submitted, including ticks.
+ * @param completed           The tasks which have finished without an exception.
+ * @param failed              The tasks which have thrown.
+ * @param cancelled           The tasks cancelled before finishing, mostly when the daemon was stopped.
+ * @param active              The tasks waiting or running right now.
+ * @param overruns            The ticks which took longer than their period, or were skipped as the previous one was still running.
+ * @param averageQueueLatency The average time from submitting a task to it starting to run.
+ * @param maxQueueLatency     The longest time from submitting a task to it starting to run.
+ */
+public record SchedulerStats(long submitted, long completed, long failed, long cancelled, int active, long overruns,
+                             Duration averageQueueLatency, Duration maxQueueLatency) {
+}
@@ -0,0 +1,107 @@
+package cz.oneblock.core.scheduler;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A task running at a fixed rate, see {@link DaemonExecutor#scheduleAtFixedRate(Runnable, Duration)}.
+ * <p>
+ * Runs never overlap. When a run takes longer than the period, it is counted as an overrun, and the runs which would have overlapped with it are skipped and counted as well.
+ */
+public final class Tick {
+
+    private static final long WARNING_INTERVAL_NANOS = Duration.ofMinutes(1).toNanos();
+
+    private final DaemonExecutor executor;
+    private final Runnable task;
+    private final Duration period;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder overruns = new LongAdder();
+    private final AtomicLong lastWarning = new AtomicLong(System.nanoTime() - WARNING_INTERVAL_NANOS);
+    private volatile ScheduledFuture<?> future;
+    private volatile boolean cancelled;
+
+    Tick(DaemonExecutor executor, Runnable task, Duration period) {
+        this.executor = executor;
+        this.task = task;
+        this.period = period;
+    }
+
+    void setFuture(ScheduledFuture<?> future) {
+        this.future = future;
+        if (cancelled) future.cancel(false);
+    }
+
+    /**
+     * Called by the ticker thread, hands the run over to the CPU pool.
+     */
+    void fire() {
+        if (cancelled) return;
+
+        if (!running.compareAndSet(false, true)) {
+            overrun("the previous run has not finished yet");
+            return;
+        }
+
+        try {
+            executor.executeTick(this::run);
+        } catch (RuntimeException e) {
+            // The daemon is being stopped.
+            running.set(false);
+        }
+    }
+
+    private void run() {
+        var start = System.nanoTime();
+
+        try {
+            task.run();
+        } finally {
+            runs.increment();
+            running.set(false);
+
+            var took = System.nanoTime() - start;
+            if (took > period.toNanos()) overrun("the run took " + took / 1_000_000 + " ms");
+        }
+    }
+
+    private void overrun(String reason) {
+        overruns.increment();
+        executor.recordOverrun();
+
+        var now = System.nanoTime();
+        var last = lastWarning.get();
+
+        if (now - last >= WARNING_INTERVAL_NANOS && lastWarning.compareAndSet(last, now)) {
+            executor.warn("Tick of daemon {} with a period of {} ms has overrun, {}. {} overruns in total",
+                    period.toMillis(), reason, overruns.sum());
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+
+        var current = future;
+        if (current != null) current.cancel(false);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public Duration getPeriod() {
+        return period;
+    }
+
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    public long getOverruns() {
+        return overruns.sum();
+    }
+}
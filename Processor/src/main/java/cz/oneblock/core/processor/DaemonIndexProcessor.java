@@ -0,0 +1,211 @@
+package cz.oneblock.core.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates a {@code GeneratedDaemonIndex} into every package containing daemons, and registers them as services of {@code cz.oneblock.core.index.DaemonIndex}.
+ * The index constructs the daemons by calling their constructors directly, and contains the conflicts declared by {@code @DaemonConflict}
+ * and the daemons marked by {@code @LazyDaemon}.
+ * <p>
+ * The generated index lives in the package of the daemons, so it can call package-private and protected constructors. Daemons with a private constructor are
+ * still listed, but are constructed reflectively.
+ */
+@SupportedAnnotationTypes("*")
+public class DaemonIndexProcessor extends AbstractProcessor {
+
+    private static final String ABSTRACT_DAEMON = "cz.oneblock.core.AbstractDaemon";
+    private static final String SYSTEM_DAEMON = "cz.oneblock.core.SystemDaemon";
+    private static final String DAEMON_CONFLICT = "cz.oneblock.core.util.DaemonConflict";
+    private static final String LAZY_DAEMON = "cz.oneblock.core.util.LazyDaemon";
+    private static final String ABSTRACT_DAEMON_INDEX = "cz.oneblock.core.index.AbstractDaemonIndex";
+    private static final String SERVICE_FILE = "META-INF/services/cz.oneblock.core.index.DaemonIndex";
+    private static final String INDEX_NAME = "GeneratedDaemonIndex";
+
+    private final Map<String, Integer> indexesPerPackage = new HashMap<>();
+    private final List<String> generatedIndexes = new ArrayList<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeServiceFile();
+            return false;
+        }
+
+        var abstractDaemon = processingEnv.getElementUtils().getTypeElement(ABSTRACT_DAEMON);
+
+        // The Core is not on the classpath, nothing to index.
+        if (abstractDaemon == null) return false;
+
+        var daemonType = processingEnv.getTypeUtils().erasure(abstractDaemon.asType());
+        var daemons = new TreeMap<String, List<TypeElement>>();
+
+        for (Element element : roundEnv.getRootElements()) {
+            collectDaemons(element, daemonType, daemons);
+        }
+
+        daemons.forEach(this::writeIndex);
+
+        return false;
+    }
+
+    private void collectDaemons(Element element, TypeMirror daemonType, Map<String, List<TypeElement>> daemons) {
+        if (element.getKind() != ElementKind.CLASS) return;
+
+        var type = (TypeElement) element;
+        var types = processingEnv.getTypeUtils();
+
+        if (!type.getModifiers().contains(Modifier.ABSTRACT) && types.isSubtype(types.erasure(type.asType()), daemonType)) {
+            var packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+            daemons.computeIfAbsent(packageName, x -> new ArrayList<>()).add(type);
+        }
+
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            // Inner classes cannot be constructed from the system daemon alone.
+            if (nested.getModifiers().contains(Modifier.STATIC)) {
+                collectDaemons(nested, daemonType, daemons);
+            }
+        }
+    }
+
+    private void writeIndex(String packageName, List<TypeElement> daemons) {
+        var count = indexesPerPackage.merge(packageName, 1, Integer::sum);
+        var simpleName = count == 1 ? INDEX_NAME : INDEX_NAME + count;
+        var qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+
+        var source = new StringBuilder();
+
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+
+        source.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n")
+                .append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+                .append("public final class ").append(simpleName).append(" extends ").append(ABSTRACT_DAEMON_INDEX).append(" {\n\n")
+                .append("    public ").append(simpleName).append("() {\n");
+
+        for (TypeElement daemon : daemons) {
+            source.append("        register(")
+                    .append(classLiteral(daemon))
+                    .append(", ")
+                    .append(factory(daemon))
+                    .append(", java.util.List.of(")
+                    .append(String.join(", ", conflicts(daemon)))
+                    .append("), ")
+                    .append(hasAnnotation(daemon, LAZY_DAEMON))
+                    .append(");\n");
+        }
+
+        source.append("    }\n\n}\n");
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, daemons.toArray(Element[]::new)).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        generatedIndexes.add(qualifiedName);
+    }
+
+    private String factory(TypeElement daemon) {
+        var constructor = ElementFilter.constructorsIn(daemon.getEnclosedElements()).stream()
+                .filter(candidate -> candidate.getParameters().size() == 1)
+                .filter(candidate -> SYSTEM_DAEMON.equals(processingEnv.getTypeUtils().erasure(candidate.getParameters().get(0).asType()).toString()))
+                .findFirst();
+
+        if (constructor.isEmpty()) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Daemon does not have a constructor with one argument of type " + SYSTEM_DAEMON, daemon);
+            return "null";
+        }
+
+        if (!isAccessible(constructor.get())) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "The constructor of the daemon is private, it will be constructed reflectively", constructor.get());
+            return "null";
+        }
+
+        return "system -> new " + daemon.getQualifiedName() + "(system)";
+    }
+
+    private boolean isAccessible(Element element) {
+        for (Element current = element; current instanceof TypeElement || current instanceof ExecutableElement; current = current.getEnclosingElement()) {
+            if (current.getModifiers().contains(Modifier.PRIVATE)) return false;
+        }
+        return true;
+    }
+
+    private boolean hasAnnotation(TypeElement daemon, String annotationName) {
+        for (AnnotationMirror annotation : daemon.getAnnotationMirrors()) {
+            if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) return true;
+        }
+        return false;
+    }
+
+    private List<String> conflicts(TypeElement daemon) {
+        var conflicts = new ArrayList<String>();
+
+        for (AnnotationMirror annotation : daemon.getAnnotationMirrors()) {
+            var annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+
+            if (!annotationType.getQualifiedName().contentEquals(DAEMON_CONFLICT)) continue;
+
+            annotation.getElementValues().forEach((key, value) -> {
+                if (!key.getSimpleName().contentEquals("value")) return;
+
+                if (value.getValue() instanceof List<?> values) {
+                    for (Object conflict : values) {
+                        conflicts.add(classLiteral((TypeMirror) ((AnnotationValue) conflict).getValue()));
+                    }
+                } else {
+                    conflicts.add(classLiteral((TypeMirror) value.getValue()));
+                }
+            });
+        }
+
+        return conflicts;
+    }
+
+    private String classLiteral(TypeMirror type) {
+        if (type instanceof DeclaredType declared) {
+            return classLiteral((TypeElement) declared.asElement());
+        }
+        return type + ".class";
+    }
+
+    private String classLiteral(TypeElement type) {
+        // Generic daemons have to be cast, as their raw class is not a subtype of AbstractDaemon<?>.
+        if (type.getTypeParameters().isEmpty()) {
+            return type.getQualifiedName() + ".class";
+        }
+        return "(Class) " + type.getQualifiedName() + ".class";
+    }
+
+    private void writeServiceFile() {
+        if (generatedIndexes.isEmpty()) return;
+
+        try (Writer writer = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE).openWriter()) {
+            for (String index : generatedIndexes) {
+                writer.write(index);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write " + SERVICE_FILE + ": " + e.getMessage());
+        }
+    }
+}